@@ -0,0 +1,96 @@
+package beehive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// The application classes live in the default package, which a named package cannot import, so the
+// benchmarks call them through method handles. The handles are static finals, which the JIT inlines
+// like direct calls. Classes are looked up without initializing them, so system properties set in a
+// benchmark's setup still reach their static configuration.
+final class Beehive {
+    private static final String MARKER_FILE = ".beehive-benchmark";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
+    static final MethodHandle DATA_MANAGER = method("DataManager", "getInstance");
+    static final MethodHandle SAVE = method("DataManager", "saveDataToFile");
+    static final MethodHandle LOAD = method("DataManager", "loadDataFromFile");
+    static final MethodHandle RELOAD = method("DataManager", "reloadDataFromFile");
+    static final MethodHandle GET_USER_BY_EMAIL = method("DataManager", "getUserByEmail", String.class);
+    static final MethodHandle GET_NEXT_REPORT_ID = method("DataManager", "getNextReportId");
+    static final MethodHandle GET_HIVES = method("DataManager", "getHives");
+    static final MethodHandle GET_TASKS = method("DataManager", "getTasks");
+    static final MethodHandle GET_HIVE = method("DataManager", "getHive", int.class);
+    static final MethodHandle UPDATE_HIVE = method("DataManager", "updateHive", type("Hive"));
+    static final MethodHandle SET_HONEY_LEVEL = method("Hive", "setHoneyLevel", double.class);
+    static final MethodHandle ACTIVITY_LOGGER = method("ActivityLogger", "getInstance");
+    static final MethodHandle LOG_ACTIVITY = method("ActivityLogger", "logActivity", int.class, String.class, String.class);
+    static final MethodHandle FLUSH_LOG = method("ActivityLogger", "flush");
+    
+    private Beehive() {
+    }
+    
+    // DataManager works on fixed file names in the working directory, so refuse to run anywhere that
+    // holds data the benchmarks did not create
+    static void prepareWorkingDirectory() throws IOException {
+        File marker = new File(MARKER_FILE);
+        if (!marker.exists() && (new File("beekeeping_data.dat").exists() || new File("activity_log.txt").exists())) {
+            throw new IllegalStateException("Run the benchmarks from an empty scratch directory, not "
+                                            + new File(".").getAbsolutePath());
+        }
+        marker.createNewFile();
+    }
+    
+    // Generates the dataset and loads it; hives and tasks get the given size, users and reports scale with it
+    static Object loadDataset(int size) throws Throwable {
+        prepareWorkingDirectory();
+        Object generator = type("DatasetGenerator").getConstructor(int.class, int.class, int.class, int.class, long.class)
+                                                   .newInstance(Math.max(2, size / 1000), size, size, Math.max(1, size / 10), 1L);
+        generator.getClass().getMethod("write").invoke(generator);
+        return DATA_MANAGER.invoke();
+    }
+    
+    // Makes the next loadDataFromFile read every segment again instead of only changed ones
+    static void forgetLoadedSegments(Object dataManager) throws ReflectiveOperationException {
+        Class<?> store = type("SegmentedStore");
+        Field generations = dataManager.getClass().getDeclaredField("segmentGenerations");
+        generations.setAccessible(true);
+        generations.set(dataManager, store.getMethod("emptySegmentGenerations").invoke(null));
+    }
+    
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name, false, Beehive.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Application class " + name + " is not on the classpath", e);
+        }
+    }
+    
+    // Handles are adapted to Object parameters and results so callers do not need the application types
+    private static MethodHandle method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return generic(LOOKUP.unreflect(method));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot access " + className + "." + name, e);
+        }
+    }
+    
+    private static MethodHandle generic(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (!type.parameterType(i).isPrimitive()) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (!type.returnType().isPrimitive()) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+}
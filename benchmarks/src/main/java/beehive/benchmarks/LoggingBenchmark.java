@@ -0,0 +1,44 @@
+package beehive.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Caller cost of logActivity with synchronous and asynchronous logging, alone and with four threads.
+// Rotation keeps the log in the scratch directory from growing without bound.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dbeehive.log.maxSegments=2"})
+public class LoggingBenchmark {
+    @Param({"false", "true"})
+    public String async;
+    
+    private Object logger;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Beehive.prepareWorkingDirectory();
+        // Read once when ActivityLogger is initialized, which happens on the first call below
+        System.setProperty("beehive.log.async", async);
+        logger = Beehive.ACTIVITY_LOGGER.invoke();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Beehive.FLUSH_LOG.invoke(logger);
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public void logActivity() throws Throwable {
+        Beehive.LOG_ACTIVITY.invoke(logger, 7, "Jane Doe", "Created new task - ID: 42");
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void logActivityFourThreads() throws Throwable {
+        Beehive.LOG_ACTIVITY.invoke(logger, 7, "Jane Doe", "Created new task - ID: 42");
+    }
+}
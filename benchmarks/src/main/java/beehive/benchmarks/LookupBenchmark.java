@@ -0,0 +1,56 @@
+package beehive.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Lookups and the map getters for datasets of 10 to 1,000,000 hives and tasks. The copy benchmarks
+// measure what a caller pays to take a private HashMap copy of the maps the getters return.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dbeehive.durability=none"})
+public class LookupBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    
+    private Object dataManager;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dataManager = Beehive.loadDataset(size);
+    }
+    
+    @Benchmark
+    public Object getUserByEmail() throws Throwable {
+        return Beehive.GET_USER_BY_EMAIL.invoke(dataManager, "Admin@Example.com");
+    }
+    
+    @Benchmark
+    public int getNextReportId() throws Throwable {
+        return (int) Beehive.GET_NEXT_REPORT_ID.invoke(dataManager);
+    }
+    
+    @Benchmark
+    public Object getHives() throws Throwable {
+        return Beehive.GET_HIVES.invoke(dataManager);
+    }
+    
+    @Benchmark
+    public Object getTasks() throws Throwable {
+        return Beehive.GET_TASKS.invoke(dataManager);
+    }
+    
+    @Benchmark
+    public Object copyHives() throws Throwable {
+        return new HashMap<>((Map<?, ?>) Beehive.GET_HIVES.invoke(dataManager));
+    }
+    
+    @Benchmark
+    public Object copyTasks() throws Throwable {
+        return new HashMap<>((Map<?, ?>) Beehive.GET_TASKS.invoke(dataManager));
+    }
+}
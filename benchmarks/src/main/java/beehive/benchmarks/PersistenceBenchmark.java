@@ -0,0 +1,47 @@
+package beehive.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Saving, loading and reloading the data file for datasets of 10 to 1,000,000 hives and tasks.
+// Durability is off so the numbers do not depend on how fast the disk syncs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dbeehive.durability=none"})
+public class PersistenceBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    
+    private Object dataManager;
+    private int nextHive;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dataManager = Beehive.loadDataset(size);
+    }
+    
+    // A checkpoint after one hive changed: rewrites the hive segment and the manifest
+    @Benchmark
+    public void saveDataToFile() throws Throwable {
+        Object hive = Beehive.GET_HIVE.invoke(dataManager, 1 + nextHive++ % size);
+        Beehive.SET_HONEY_LEVEL.invoke(hive, (double) (nextHive % 100));
+        Beehive.UPDATE_HIVE.invoke(dataManager, hive);
+        Beehive.SAVE.invoke(dataManager);
+    }
+    
+    // A cold load that reads every segment, as on startup
+    @Benchmark
+    public void loadDataFromFile() throws Throwable {
+        Beehive.forgetLoadedSegments(dataManager);
+        Beehive.LOAD.invoke(dataManager);
+    }
+    
+    // The check every menu action does; nothing changed on disk, so no segment is read
+    @Benchmark
+    public void reloadDataFromFile() throws Throwable {
+        Beehive.RELOAD.invoke(dataManager);
+    }
+}
@@ -1,17 +1,57 @@
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
 
 public class ActivityLogger {
     private static final String LOG_FILE = "activity_log.txt";
+    private static final String STRUCTURED_LOG_FILE = "activity_log.bin";
     private static ActivityLogger instance = null;
     private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final boolean ASYNC_ENABLED = Boolean.getBoolean("beehive.log.async");
+    private static final int ASYNC_BUFFER_SIZE = Integer.getInteger("beehive.log.bufferSize", 8192);
+    private static final OverflowPolicy OVERFLOW_POLICY = OverflowPolicy.fromProperty(System.getProperty("beehive.log.overflow"));
+    private static final long MAX_FILE_BYTES = Long.getLong("beehive.log.maxBytes", 10L * 1024 * 1024);
+    private static final boolean ROTATE_DAILY = Boolean.getBoolean("beehive.log.rotateDaily");
+    private static final boolean COMPRESS_SEGMENTS = !"false".equalsIgnoreCase(System.getProperty("beehive.log.compress"));
+    private static final int MAX_SEGMENTS = Integer.getInteger("beehive.log.maxSegments", 20);
+    private static final int MAX_SEGMENT_AGE_DAYS = Integer.getInteger("beehive.log.maxAgeDays", 0);
+    private static final boolean STRUCTURED_ENABLED = Boolean.getBoolean("beehive.log.structured");
+    private static final long STRUCTURED_FLUSH_MILLIS = Long.getLong("beehive.log.structuredFlushMs", 1000);
+    
+    // Only set in async mode; entries are then formatted and written by a background thread
+    private AsyncLogWriter asyncWriter;
+    private final LogCounters counters = new LogCounters();
+    // Reused for every synchronous line, guarded by the write lock
+    private final LogLineEncoder lineEncoder = new LogLineEncoder(256);
+    private final RotatingLogFile logFile = new RotatingLogFile(LOG_FILE, MAX_FILE_BYTES, ROTATE_DAILY, COMPRESS_SEGMENTS,
+                                                                MAX_SEGMENTS, MAX_SEGMENT_AGE_DAYS);
+    // Only set when the indexed binary log is enabled; it is written next to the text log
+    private StructuredActivityLog structuredLog;
+    private final LatencyHistogram callTimer = Metrics.getInstance().timer("beehive_log_call_seconds",
+                                                                           "Time a caller spends in logActivity or logSystemActivity");
+    
+    // What async logging does when its buffer is full: wait, write to an overflow file, or drop and count
+    public enum OverflowPolicy {
+        BLOCK, SPILL, DROP;
+        
+        static OverflowPolicy fromProperty(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return BLOCK;
+            }
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
     
     private ActivityLogger() {
+        if (STRUCTURED_ENABLED) {
+            structuredLog = new StructuredActivityLog(STRUCTURED_LOG_FILE, counters);
+            structuredLog.startBackgroundFlush(STRUCTURED_FLUSH_MILLIS);
+        }
+        if (ASYNC_ENABLED) {
+            asyncWriter = new AsyncLogWriter(logFile, LOG_FILE + ".spill", ASYNC_BUFFER_SIZE, OVERFLOW_POLICY, counters,
+                                             structuredLog);
+        }
+        registerMetrics();
     }
     
     public static synchronized ActivityLogger getInstance() {
@@ -22,88 +62,76 @@ public class ActivityLogger {
     }
     
     public void logActivity(int userId, String userName, String action) {
+        long start = System.nanoTime();
+        log(false, userId, userName, action);
+        callTimer.recordSince(start);
+    }
+    
+    public void logSystemActivity(String action) {
+        long start = System.nanoTime();
+        log(true, 0, null, action);
+        callTimer.recordSince(start);
+    }
+    
+    private void log(boolean system, int userId, String userName, String action) {
+        long timestamp = System.currentTimeMillis();
+        if (asyncWriter != null && asyncWriter.offer(timestamp, system, userId, userName, action)) {
+            return;
+        }
+        if (structuredLog != null) {
+            structuredLog.append(timestamp, system ? StructuredActivityLog.SYSTEM_USER_ID : userId, userName, action);
+        }
+        writeLine(timestamp, system, userId, userName, action);
+    }
+    
+    private void registerMetrics() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.counter("beehive_log_enqueued_total", "Log entries queued for the background writer", counters::getEnqueued);
+        metrics.counter("beehive_log_written_total", "Log entries written to the activity log", counters::getWritten);
+        metrics.counter("beehive_log_spilled_total", "Log entries written to the overflow file", counters::getSpilled);
+        metrics.counter("beehive_log_dropped_total", "Log entries that were lost", counters::getDropped);
+        metrics.gauge("beehive_log_queue_depth", "Log entries waiting for the background writer",
+                      () -> asyncWriter != null ? asyncWriter.getQueueDepth() : 0);
+    }
+    
+    public LogCounters getCounters() {
+        return counters;
+    }
+    
+    // Entries of one user, or of everyone when userId is null, with from <= timestamp < to.
+    // Reads the binary log, which only has entries from sessions that had it enabled.
+    public List<StructuredActivityLog.Entry> queryActivity(Integer userId, long fromMillis, long toMillis) throws IOException {
+        flush();
+        StructuredActivityLog log = structuredLog != null ? structuredLog : new StructuredActivityLog(STRUCTURED_LOG_FILE);
+        return log.query(userId, fromMillis, toMillis);
+    }
+    
+    // Waits for the file lock instead of skipping the line when another session holds it
+    private void writeLine(long timestamp, boolean system, int userId, String userName, String action) {
         lock.writeLock().lock();
         try {
-            FileOutputStream fos = null;
-            FileChannel channel = null;
-            FileLock fileLock = null;
-            
-            try {
-                fos = new FileOutputStream(LOG_FILE, true);
-                channel = fos.getChannel();
-                fileLock = channel.tryLock();
-                
-                if (fileLock != null) {
-                    String logEntry = String.format("[%s] User %d (%s): %s%n", 
-                        LocalDateTime.now().format(formatter), userId, userName, action);
-                    fos.write(logEntry.getBytes());
-                }
-            } catch (IOException e) {
-            } finally {
-                if (fileLock != null) {
-                    try {
-                        fileLock.release();
-                    } catch (IOException e) {
-                    }
-                }
-                if (channel != null) {
-                    try {
-                        channel.close();
-                    } catch (IOException e) {
-                    }
-                }
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                    }
-                }
-            }
+            lineEncoder.reset();
+            lineEncoder.encode(timestamp, system, userId, userName, action);
+            logFile.append(lineEncoder.buffer(), 0, lineEncoder.length());
+            counters.recordWritten(1);
+        } catch (IOException e) {
+            counters.recordDropped(1);
         } finally {
             lock.writeLock().unlock();
         }
     }
     
-    public void logSystemActivity(String action) {
-        lock.writeLock().lock();
-        try {
-            FileOutputStream fos = null;
-            FileChannel channel = null;
-            FileLock fileLock = null;
-            
+    // Waits until every line logged so far is in the file, and writes the pending binary log block
+    public void flush() {
+        if (asyncWriter != null) {
+            asyncWriter.flush();
+        }
+        if (structuredLog != null) {
             try {
-                fos = new FileOutputStream(LOG_FILE, true);
-                channel = fos.getChannel();
-                fileLock = channel.tryLock();
-                
-                if (fileLock != null) {
-                    String logEntry = String.format("[%s] SYSTEM: %s%n", 
-                        LocalDateTime.now().format(formatter), action);
-                    fos.write(logEntry.getBytes());
-                }
+                structuredLog.flush();
             } catch (IOException e) {
-            } finally {
-                if (fileLock != null) {
-                    try {
-                        fileLock.release();
-                    } catch (IOException e) {
-                    }
-                }
-                if (channel != null) {
-                    try {
-                        channel.close();
-                    } catch (IOException e) {
-                    }
-                }
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                    }
-                }
+                // Written again by the background flush
             }
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 }
\ No newline at end of file
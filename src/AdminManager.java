@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Scanner;
 import java.util.Map;
@@ -9,6 +10,8 @@ import java.util.stream.Collectors;
 import java.util.concurrent.ForkJoinPool;
 
 public class AdminManager {
+    private static final String METRICS_FILE = System.getProperty("beehive.metrics.file", "beehive_metrics.prom");
+    private static final String SAVE_FAILED = "Could not save the change, please try again.";
     private DataManager dataManager;
     private Scanner scanner;
     private User adminUser;
@@ -37,8 +40,10 @@ public class AdminManager {
             System.out.println("10. View My Tasks");
             System.out.println("11. View Reports");
             System.out.println("12. Delete Report");
-            // System.out.println("13. View Hive Statistics (Parallel)");
-            // System.out.println("14. View Task Statistics (Parallel)");
+            System.out.println("13. View System Metrics");
+            System.out.println("14. View Hive Statistics (Parallel)");
+            System.out.println("15. View Task Statistics (Parallel)");
+            System.out.println("16. Filter Hives");
             System.out.println("0. Exit App");
             System.out.print("Choose an option: ");
             
@@ -81,6 +86,18 @@ public class AdminManager {
                 case "12":
                     deleteReport();
                     break;
+                case "13":
+                    viewSystemMetrics();
+                    break;
+                case "14":
+                    viewHiveStatisticsParallel();
+                    break;
+                case "15":
+                    viewTaskStatisticsParallel();
+                    break;
+                case "16":
+                    filterHives();
+                    break;
                 case "0":
                     logger.logActivity(adminUser.getId(), adminUser.getName(), "Logged out");
                     return;
@@ -122,14 +139,13 @@ public class AdminManager {
         }
         
         dataManager.reloadDataFromFile();
-        Map<Integer, User> allUsers = dataManager.getUsers();
-        int newId = 1;
-        if (!allUsers.isEmpty()) {
-            newId = allUsers.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
-        }
+        int newId = dataManager.getNextUserId();
         
         User newUser = new User(newId, name, email, password, role);
-        dataManager.addUser(newUser);
+        if (!dataManager.addUser(newUser)) {
+            System.out.println(SAVE_FAILED);
+            return;
+        }
         
         System.out.println("User created successfully with ID: " + newId);
         logger.logActivity(adminUser.getId(), adminUser.getName(), 
@@ -187,7 +203,7 @@ public class AdminManager {
         String hiveIdsInput = scanner.nextLine().trim();
         
         String[] hiveIdStrings = hiveIdsInput.split(",");
-        List<Integer> hiveIds = new ArrayList<>();
+        IntList hiveIds = new IntList();
         
         for (String hiveIdStr : hiveIdStrings) {
             try {
@@ -207,13 +223,11 @@ public class AdminManager {
             return;
         }
         
-        int newId = 1;
-        Map<Integer, Task> allTasks = dataManager.getTasks();
-        if (!allTasks.isEmpty()) {
-            newId = allTasks.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
-        }
+        // One block of IDs for all tasks of this batch
+        int newId = dataManager.allocateTaskIds(hiveIds.size());
         
-        for (int hiveId : hiveIds) {
+        for (int i = 0; i < hiveIds.size(); i++) {
+            int hiveId = hiveIds.getInt(i);
             Task newTask = new Task(
                 newId,
                 description,
@@ -223,13 +237,19 @@ public class AdminManager {
                 LocalDate.now().plusDays(7)
             );
             
-            dataManager.addTask(newTask);
+            if (!dataManager.addTask(newTask)) {
+                System.out.println(SAVE_FAILED);
+                break;
+            }
             System.out.println("Task created successfully with ID: " + newId + " for Hive ID: " + hiveId);
             logger.logActivity(adminUser.getId(), adminUser.getName(), 
                               "Created new task - ID: " + newId + ", Description: " + description + ", Type: " + type + ", Hive ID: " + hiveId);
             
             newId++;
         }
+        
+        // One write for the whole batch when write-behind is enabled
+        dataManager.flush();
     }
     
     private void assignTaskToUser() {
@@ -273,7 +293,10 @@ public class AdminManager {
         }
         
         user.assignTask(task);
-        dataManager.updateUser(user);
+        if (!dataManager.updateTask(task) || !dataManager.updateUser(user)) {
+            System.out.println(SAVE_FAILED);
+            return;
+        }
         System.out.println("Task assigned successfully.");
         logger.logActivity(adminUser.getId(), adminUser.getName(), 
                           "Assigned task - Task ID: " + taskId + " to User ID: " + userId);
@@ -281,15 +304,38 @@ public class AdminManager {
     
     private void viewAllTasks() {
         System.out.println("\n=== All Tasks ===");
+        System.out.println("1. All Tasks");
+        System.out.println("2. Tasks for a Hive");
+        System.out.println("3. Tasks by Status");
+        System.out.println("4. Tasks by Type");
+        System.out.print("Choose option (1-4): ");
+        String filterChoice = scanner.nextLine().trim();
+        
+        Integer hiveId = null;
+        Task.Status status = null;
+        Task.Type type = null;
+        switch (filterChoice) {
+            case "2":
+                System.out.print("Enter hive ID: ");
+                hiveId = getIntInput("");
+                break;
+            case "3":
+                status = chooseTaskStatus();
+                break;
+            case "4":
+                type = chooseTaskType();
+                break;
+        }
+        
         dataManager.reloadDataFromFile();
-        Map<Integer, Task> tasks = dataManager.getTasks();
+        List<Task> tasks = dataManager.findTasks(hiveId, null, status, type);
         if (tasks.isEmpty()) {
             System.out.println("No tasks found.");
             logger.logActivity(adminUser.getId(), adminUser.getName(), "Viewed tasks - No tasks found");
             return;
         }
         
-        for (Task task : tasks.values()) {
+        for (Task task : tasks) {
             System.out.println("ID: " + task.getId() + 
                               ", Description: " + task.getDescription() + 
                               ", Type: " + task.getType() + 
@@ -322,6 +368,79 @@ public class AdminManager {
                           "Viewed all hives - Count: " + hives.size());
     }
     
+    private void filterHives() {
+        System.out.println("\n=== Filter Hives ===");
+        System.out.println("Conditions: healthy, unhealthy, attention, queenless, honey < | <= | > | >= | = level");
+        System.out.println("Combine them with and, or, not and parentheses, e.g. queenless and not healthy");
+        System.out.print("Enter filter: ");
+        String input = scanner.nextLine().trim();
+        
+        HiveFilter filter;
+        try {
+            filter = HiveFilter.parse(input);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid filter: " + e.getMessage());
+            logger.logActivity(adminUser.getId(), adminUser.getName(),
+                              "Attempted to filter hives - Invalid filter: " + input);
+            return;
+        }
+        
+        dataManager.reloadDataFromFile();
+        long start = System.nanoTime();
+        List<Hive> hives = dataManager.findHives(filter);
+        double elapsedMillis = (System.nanoTime() - start) / 1e6;
+        
+        int shown = Math.min(hives.size(), 50);
+        for (Hive hive : hives.subList(0, shown)) {
+            System.out.println("ID: " + hive.getId() +
+                              ", Healthy: " + (hive.isHealthy() ? "Yes" : "No") +
+                              ", Needs Attention: " + (hive.isNeedsAttention() ? "Yes" : "No") +
+                              ", Queenless: " + (hive.isQueenless() ? "Yes" : "No") +
+                              ", Honey Level: " + String.format("%.1f", hive.getHoneyLevel()) + "%");
+        }
+        if (hives.size() > shown) {
+            System.out.println("... and " + (hives.size() - shown) + " more");
+        }
+        System.out.println(hives.size() + " of " + dataManager.getHives().size() + " hives match " + filter +
+                           String.format(" (%.2f ms)", elapsedMillis));
+        
+        logger.logActivity(adminUser.getId(), adminUser.getName(),
+                          "Filtered hives - Filter: " + filter + ", Count: " + hives.size());
+    }
+    
+    private Task.Status chooseTaskStatus() {
+        System.out.println("1. Pending");
+        System.out.println("2. Completed");
+        System.out.println("3. Overdue");
+        System.out.print("Choose status (1-3): ");
+        switch (scanner.nextLine().trim()) {
+            case "2":
+                return Task.Status.COMPLETED;
+            case "3":
+                return Task.Status.OVERDUE;
+            default:
+                return Task.Status.PENDING;
+        }
+    }
+    
+    private Task.Type chooseTaskType() {
+        System.out.println("1. Inspect Hive");
+        System.out.println("2. Feed Hive");
+        System.out.println("3. Acquire Queen");
+        System.out.println("4. Other");
+        System.out.print("Choose type (1-4): ");
+        switch (scanner.nextLine().trim()) {
+            case "1":
+                return Task.Type.INSPECT_HIVE;
+            case "2":
+                return Task.Type.FEED_HIVE;
+            case "3":
+                return Task.Type.ACQUIRE_QUEEN;
+            default:
+                return Task.Type.OTHER;
+        }
+    }
+    
     private void createNewHive() {
         System.out.println("\n=== Create New Hive ===");
         System.out.print("Enter hive ID: ");
@@ -347,7 +466,10 @@ public class AdminManager {
         double honeyLevel = getDoubleInput("");
         
         Hive newHive = new Hive(id, isHealthy, needsAttention, isQueenless, honeyLevel);
-        dataManager.addHive(newHive);
+        if (!dataManager.addHive(newHive)) {
+            System.out.println(SAVE_FAILED);
+            return;
+        }
         
         System.out.println("Hive created successfully with ID: " + id);
         logger.logActivity(adminUser.getId(), adminUser.getName(), 
@@ -393,7 +515,10 @@ public class AdminManager {
                 System.out.print("Enter new description: ");
                 String newDescription = scanner.nextLine().trim();
                 task.setDescription(newDescription);
-                dataManager.updateTask(task);
+                if (!dataManager.updateTask(task)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Task description updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated task description - Task ID: " + taskId);
@@ -422,7 +547,10 @@ public class AdminManager {
                 }
                 
                 task.setType(newType);
-                dataManager.updateTask(task);
+                if (!dataManager.updateTask(task)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Task type updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated task type - Task ID: " + taskId + ", New Type: " + newType);
@@ -450,7 +578,10 @@ public class AdminManager {
                 }
                 
                 task.setStatus(newStatus);
-                dataManager.updateTask(task);
+                if (!dataManager.updateTask(task)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Task status updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated task status - Task ID: " + taskId + ", New Status: " + newStatus);
@@ -462,7 +593,10 @@ public class AdminManager {
                 try {
                     LocalDate newDueDate = LocalDate.parse(dateStr);
                     task.setDueDate(newDueDate);
-                    dataManager.updateTask(task);
+                    if (!dataManager.updateTask(task)) {
+                        System.out.println(SAVE_FAILED);
+                        break;
+                    }
                     System.out.println("Task due date updated successfully.");
                     logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                       "Updated task due date - Task ID: " + taskId);
@@ -515,7 +649,10 @@ public class AdminManager {
                 System.out.print("Is hive healthy? (y/n): ");
                 boolean isHealthy = scanner.nextLine().trim().toLowerCase().startsWith("y");
                 hive.setHealthy(isHealthy);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive health status updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated hive health - Hive ID: " + hiveId);
@@ -525,7 +662,10 @@ public class AdminManager {
                 System.out.print("Does hive need attention? (y/n): ");
                 boolean needsAttention = scanner.nextLine().trim().toLowerCase().startsWith("y");
                 hive.setNeedsAttention(needsAttention);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive attention status updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated hive attention status - Hive ID: " + hiveId);
@@ -535,7 +675,10 @@ public class AdminManager {
                 System.out.print("Is hive queenless? (y/n): ");
                 boolean isQueenless = scanner.nextLine().trim().toLowerCase().startsWith("y");
                 hive.setQueenless(isQueenless);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive queen status updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated hive queen status - Hive ID: " + hiveId);
@@ -545,7 +688,10 @@ public class AdminManager {
                 System.out.print("Enter new honey level (0-100): ");
                 double honeyLevel = getDoubleInput("");
                 hive.setHoneyLevel(honeyLevel);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive honey level updated successfully.");
                 logger.logActivity(adminUser.getId(), adminUser.getName(), 
                                   "Updated hive honey level - Hive ID: " + hiveId);
@@ -563,7 +709,7 @@ public class AdminManager {
     private void viewMyTasks() {
         System.out.println("\n=== My Tasks ===");
         dataManager.reloadDataFromFile();
-        List<Task> tasks = adminUser.getAssignedTasks();
+        List<Task> tasks = dataManager.getTasksAssignedTo(adminUser.getId());
         if (tasks.isEmpty()) {
             System.out.println("You have no assigned tasks.");
             logger.logActivity(adminUser.getId(), adminUser.getName(), "Viewed own tasks - No assigned tasks");
@@ -608,7 +754,7 @@ public class AdminManager {
                 if (!report.getRelatedHiveIds().isEmpty()) {
                     System.out.print("Related Hives: ");
                     for (int i = 0; i < report.getRelatedHiveIds().size(); i++) {
-                        int hiveId = report.getRelatedHiveIds().get(i);
+                        int hiveId = report.getRelatedHiveIds().getInt(i);
                         Hive hive = allHives.get(hiveId);
                         if (hive != null) {
                             System.out.print("Hive #" + hiveId + 
@@ -630,7 +776,7 @@ public class AdminManager {
                 if (!report.getRelatedTaskIds().isEmpty()) {
                     System.out.print("Related Tasks: ");
                     for (int i = 0; i < report.getRelatedTaskIds().size(); i++) {
-                        int taskId = report.getRelatedTaskIds().get(i);
+                        int taskId = report.getRelatedTaskIds().getInt(i);
                         Task task = allTasks.get(taskId);
                         if (task != null) {
                             System.out.print("Task #" + taskId + 
@@ -684,12 +830,33 @@ public class AdminManager {
             return;
         }
         
-        dataManager.removeReport(reportId);
+        if (!dataManager.removeReport(reportId)) {
+            System.out.println(SAVE_FAILED);
+            return;
+        }
         System.out.println("Report deleted successfully.");
         logger.logActivity(adminUser.getId(), adminUser.getName(), 
                           "Deleted report - ID: " + reportId);
     }
     
+    private void viewSystemMetrics() {
+        System.out.println("\n=== System Metrics ===");
+        System.out.print(Metrics.getInstance().describe());
+        
+        System.out.print("\nWrite metrics to " + METRICS_FILE + " in Prometheus format? (y/N): ");
+        String confirmation = scanner.nextLine().trim().toLowerCase();
+        if (confirmation.equals("y") || confirmation.equals("yes")) {
+            try {
+                Metrics.getInstance().dumpPrometheus(METRICS_FILE);
+                System.out.println("Metrics written to " + METRICS_FILE);
+            } catch (IOException e) {
+                System.out.println("Could not write metrics: " + e.getMessage());
+            }
+        }
+        
+        logger.logActivity(adminUser.getId(), adminUser.getName(), "Viewed system metrics");
+    }
+    
     private int getIntInput(String prompt) {
         while (true) {
             try {
@@ -723,7 +890,6 @@ public class AdminManager {
         }
     }
     
-    /*
     private void viewHiveStatisticsParallel() {
         System.out.println("\n=== Hive Statistics (Parallel Processing) ===");
         
@@ -735,15 +901,25 @@ public class AdminManager {
             return;
         }
         
-        List<Hive> hivesList = new ArrayList<>(hivesMap.values());
-        
-        // Use parallel processing to generate statistics
-        int numThreads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        FleetStatistics.HiveStatistics stats = FleetStatistics.ofHives(hivesMap);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
         
         // Display the statistics
-        
-        logger.logActivity(adminUser.getId(), adminUser.getName(), 
-                          "Viewed hive statistics - Parallel processing not available");
+        long total = stats.getCount();
+        System.out.println("Total hives: " + total);
+        System.out.println("Healthy: " + stats.getHealthy() + " (" + percent(stats.getHealthy(), total) + ")");
+        System.out.println("Needs attention: " + stats.getNeedsAttention() + " (" + percent(stats.getNeedsAttention(), total) + ")");
+        System.out.println("Queenless: " + stats.getQueenless() + " (" + percent(stats.getQueenless(), total) + ")");
+        System.out.println(String.format("Honey level: min %.1f%%, max %.1f%%, mean %.1f%%, std dev %.1f",
+                                         stats.getHoneyMin(), stats.getHoneyMax(), stats.getHoneyMean(), stats.getHoneyStdDev()));
+        System.out.println(String.format("Honey level percentiles: p10 %.1f%%, p50 %.1f%%, p90 %.1f%%, p99 %.1f%%",
+                                         stats.getHoneyPercentile(0.1), stats.getHoneyPercentile(0.5),
+                                         stats.getHoneyPercentile(0.9), stats.getHoneyPercentile(0.99)));
+        System.out.println("Computed on " + ForkJoinPool.getCommonPoolParallelism() + " threads in " + elapsedMillis + " ms");
+        
+        logger.logActivity(adminUser.getId(), adminUser.getName(),
+                          "Viewed hive statistics - Count: " + total);
     }
     
     private void viewTaskStatisticsParallel() {
@@ -757,16 +933,48 @@ public class AdminManager {
             return;
         }
         
-        List<Task> tasksList = new ArrayList<>(tasksMap.values());
-        
-        // Use parallel processing to generate statistics
-        int numThreads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        FleetStatistics.TaskStatistics stats = FleetStatistics.ofTasks(tasksMap.values());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
         
         // Display the statistics
+        long total = stats.getCount();
+        System.out.println("Total tasks: " + total);
+        System.out.println("By status:");
+        for (Task.Status status : Task.Status.values()) {
+            System.out.println("  " + status + ": " + stats.getCount(status) + " (" + percent(stats.getCount(status), total) + ")");
+        }
+        long noStatus = stats.getCount((Task.Status) null);
+        if (noStatus > 0) {
+            System.out.println("  None: " + noStatus + " (" + percent(noStatus, total) + ")");
+        }
+        System.out.println("By type:");
+        for (Task.Type type : Task.Type.values()) {
+            System.out.println("  " + type + ": " + stats.getCount(type) + " (" + percent(stats.getCount(type), total) + ")");
+        }
+        long noType = stats.getCount((Task.Type) null);
+        if (noType > 0) {
+            System.out.println("  None: " + noType + " (" + percent(noType, total) + ")");
+        }
+        System.out.println("Overdue: " + stats.getOverdue() + " (" + percent(stats.getOverdue(), total) + ")");
         
-        logger.logActivity(adminUser.getId(), adminUser.getName(), 
-                          "Viewed task statistics - Parallel processing not available");
+        List<Integer> busiest = stats.getUsersByLoad();
+        System.out.println("Assigned tasks per user (busiest " + Math.min(10, busiest.size()) + " of " + busiest.size() + "):");
+        Map<Integer, User> users = dataManager.getUsers();
+        for (int userId : busiest.subList(0, Math.min(10, busiest.size()))) {
+            User user = users.get(userId);
+            String name = user != null ? user.getName() : "Unknown";
+            System.out.println("  User ID: " + userId + " (" + name + "): " + stats.getAssignedTo(userId)
+                               + " assigned, " + stats.getOverdueFor(userId) + " overdue");
+        }
+        System.out.println("Computed on " + ForkJoinPool.getCommonPoolParallelism() + " threads in " + elapsedMillis + " ms");
+        
+        logger.logActivity(adminUser.getId(), adminUser.getName(),
+                          "Viewed task statistics - Count: " + total);
+    }
+    
+    private String percent(long part, long total) {
+        return String.format("%.1f%%", total > 0 ? 100.0 * part / total : 0);
     }
-    */
 
 }
\ No newline at end of file
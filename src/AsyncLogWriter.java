@@ -0,0 +1,275 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Writes log entries on a background thread. Producers claim a slot in a bounded ring buffer with one
+// CAS and store the entry fields in it; the single consumer formats everything published so far and
+// appends it to the log file in one write per batch, so no producer waits for formatting or file I/O
+// unless the buffer is full. What happens then is up to the overflow policy.
+public class AsyncLogWriter {
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final int MAX_BATCH = 1024;
+    private static final long FULL_PARK_NANOS = 50_000;
+    
+    // Slots are reused; one is ready for the consumer once its sequence equals the sequence being read
+    private static final class Slot {
+        volatile long sequence = -1;
+        long timestamp;
+        boolean system;
+        int userId;
+        String userName;
+        String action;
+    }
+    
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean running = true;
+    
+    private final RotatingLogFile logFile;
+    private final Thread consumer;
+    // Only used by the consumer thread
+    private final LogLineEncoder batch = new LogLineEncoder(64 * 1024);
+    
+    private final ActivityLogger.OverflowPolicy policy;
+    private final LogCounters counters;
+    private final StructuredActivityLog structuredLog;
+    
+    // Lines that did not fit into the buffer or could not be written to the log; the consumer copies
+    // them into the log when it is idle. The file is shared by all sessions and guarded by its file lock.
+    private final File spillFile;
+    private final Object spillMonitor = new Object();
+    private FileChannel spillChannel;
+    private volatile boolean spillPending;
+    
+    public AsyncLogWriter(RotatingLogFile logFile, String spillPath, int capacity, ActivityLogger.OverflowPolicy policy,
+                          LogCounters counters, StructuredActivityLog structuredLog) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.logFile = logFile;
+        this.policy = policy;
+        this.counters = counters;
+        this.structuredLog = structuredLog;
+        
+        // Lines spilled by an earlier session that exited before copying them are picked up here
+        this.spillFile = new File(spillPath);
+        this.spillPending = spillFile.length() > 0;
+        
+        this.consumer = new Thread(this::drainLoop, "activity-log-writer");
+        consumer.setDaemon(true);
+        consumer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "activity-log-shutdown"));
+    }
+    
+    // Returns false once the writer is closed, so the caller can write the entry itself
+    public boolean offer(long timestamp, boolean system, int userId, String userName, String action) {
+        long sequence;
+        while (true) {
+            if (!running) {
+                return false;
+            }
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                LockSupport.unpark(consumer);
+                if (policy == ActivityLogger.OverflowPolicy.DROP) {
+                    counters.recordDropped(1);
+                    return true;
+                }
+                if (policy == ActivityLogger.OverflowPolicy.SPILL) {
+                    appendStructured(timestamp, system, userId, userName, action);
+                    // Rare enough that a one-off encoder is fine here
+                    LogLineEncoder line = new LogLineEncoder(256);
+                    line.encode(timestamp, system, userId, userName, action);
+                    if (spill(line.buffer(), line.length(), 1)) {
+                        return true;
+                    }
+                }
+                // Block, or the overflow file failed: wait for the consumer to free a slot
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.timestamp = timestamp;
+        slot.system = system;
+        slot.userId = userId;
+        slot.userName = userName;
+        slot.action = action;
+        slot.sequence = sequence;
+        counters.recordEnqueued();
+        return true;
+    }
+    
+    // Entries claimed by producers but not written by the consumer yet
+    public long getQueueDepth() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+    
+    // Waits until every line offered before this call is written, including spilled ones
+    public void flush() {
+        long target = claimed.get();
+        while ((consumed < target || spillPending) && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+    
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(5000);
+            // Entries the consumer added after the binary log's own shutdown flush
+            if (structuredLog != null) {
+                structuredLog.flush();
+            }
+            synchronized (spillMonitor) {
+                if (spillChannel != null) {
+                    spillChannel.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Nothing left to write to
+        }
+    }
+    
+    private void drainLoop() {
+        while (running || consumed < claimed.get() || spillPending) {
+            long next = consumed;
+            int count = 0;
+            batch.reset();
+            while (count < MAX_BATCH) {
+                Slot slot = slots[(int) (next & mask)];
+                if (slot.sequence != next) {
+                    break;
+                }
+                batch.encode(slot.timestamp, slot.system, slot.userId, slot.userName, slot.action);
+                appendStructured(slot.timestamp, slot.system, slot.userId, slot.userName, slot.action);
+                slot.userName = null;
+                slot.action = null;
+                next++;
+                count++;
+            }
+            
+            if (count == 0) {
+                if (spillPending) {
+                    drainSpill();
+                } else if (running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                } else {
+                    // A producer claimed a slot but has not published it yet
+                    Thread.yield();
+                }
+                continue;
+            }
+            if (write(batch.buffer(), batch.length())) {
+                counters.recordWritten(count);
+            } else if (!spill(batch.buffer(), batch.length(), count)) {
+                counters.recordDropped(count);
+            }
+            consumed = next;
+        }
+    }
+    
+    private void appendStructured(long timestamp, boolean system, int userId, String userName, String action) {
+        if (structuredLog != null) {
+            structuredLog.append(timestamp, system ? StructuredActivityLog.SYSTEM_USER_ID : userId, userName, action);
+        }
+    }
+    
+    private boolean write(byte[] bytes, int length) {
+        try {
+            logFile.append(bytes, 0, length);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    // Appends lines to the overflow file; a batch that failed to reach the log ends up here as well
+    @SuppressWarnings("try")
+    private boolean spill(byte[] bytes, int length, int count) {
+        synchronized (spillMonitor) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+                FileChannel spill = openSpillChannel();
+                try (FileLock fileLock = FileLocks.lock(spill)) {
+                    long position = spill.size();
+                    while (buffer.hasRemaining()) {
+                        position += spill.write(buffer, position);
+                    }
+                }
+                counters.recordSpilled(count);
+                spillPending = true;
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+    
+    // Copies the overflow file into the log and empties it; lines keep their original timestamps
+    @SuppressWarnings("try")
+    private void drainSpill() {
+        synchronized (spillMonitor) {
+            try {
+                FileChannel spill = openSpillChannel();
+                try (FileLock fileLock = FileLocks.lock(spill)) {
+                    ByteBuffer buffer = ByteBuffer.allocate((int) spill.size());
+                    while (buffer.hasRemaining()) {
+                        if (spill.read(buffer, buffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                    if (buffer.position() > 0) {
+                        if (!write(buffer.array(), buffer.position())) {
+                            throw new IOException("Could not write to the activity log");
+                        }
+                        counters.recordWritten(countLines(buffer.array(), buffer.position()));
+                        spill.truncate(0);
+                    }
+                }
+                spillPending = false;
+            } catch (IOException e) {
+                // Retried the next time the consumer is idle
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+    
+    private FileChannel openSpillChannel() throws IOException {
+        if (spillChannel == null) {
+            spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return spillChannel;
+    }
+    
+    private static int countLines(byte[] bytes, int length) {
+        int lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// Hand-written binary format for snapshots and log records.
+// Ints and doubles are fixed width, dates are epoch days and strings are length-prefixed UTF-8.
+public class BinaryCodec {
+    public static final int SNAPSHOT_MAGIC = 0x4242494E; // "BBIN"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    
+    private static final int NULL_LENGTH = -1;
+    private static final int NULL_DATE = Integer.MIN_VALUE;
+    private static final byte NULL_ENUM = -1;
+    
+    private static final int FLAG_HEALTHY = 1;
+    private static final int FLAG_NEEDS_ATTENTION = 2;
+    private static final int FLAG_QUEENLESS = 4;
+    
+    private static final Task.Status[] STATUSES = Task.Status.values();
+    private static final Task.Type[] TYPES = Task.Type.values();
+    private static final User.Role[] ROLES = User.Role.values();
+    
+    public static void writeSnapshot(DataOutputStream out, long generation, List<Hive> hives, List<Task> tasks,
+                                     List<User> users, List<Report> reports) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(generation);
+        
+        out.writeInt(hives.size());
+        for (Hive hive : hives) {
+            writeHive(out, hive);
+        }
+        out.writeInt(tasks.size());
+        for (Task task : tasks) {
+            writeTask(out, task);
+        }
+        out.writeInt(users.size());
+        for (User user : users) {
+            writeUser(out, user);
+        }
+        out.writeInt(reports.size());
+        for (Report report : reports) {
+            writeReport(out, report);
+        }
+    }
+    
+    public static DataSnapshot readSnapshot(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a binary data file");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported data file version: " + version);
+        }
+        long generation = in.readLong();
+        
+        int hiveCount = in.readInt();
+        List<Hive> hives = new ArrayList<>(hiveCount);
+        IntObjectMap<Hive> hivesById = new IntObjectMap<>(hiveCount);
+        for (int i = 0; i < hiveCount; i++) {
+            Hive hive = readHive(in);
+            hives.add(hive);
+            hivesById.put(hive.getId(), hive);
+        }
+        
+        int taskCount = in.readInt();
+        List<Task> tasks = new ArrayList<>(taskCount);
+        IntObjectMap<Task> tasksById = new IntObjectMap<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            Task task = readTask(in);
+            tasks.add(task);
+            tasksById.put(task.getId(), task);
+        }
+        
+        int userCount = in.readInt();
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            users.add(readUser(in, tasksById::get, hivesById::get));
+        }
+        
+        int reportCount = in.readInt();
+        List<Report> reports = new ArrayList<>(reportCount);
+        for (int i = 0; i < reportCount; i++) {
+            reports.add(readReport(in));
+        }
+        
+        return new DataSnapshot(generation, hives, tasks, users, reports);
+    }
+    
+    // Reads only the header, returns -1 if the stream is not a binary data file
+    public static long readGeneration(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+            return -1;
+        }
+        return in.readLong();
+    }
+    
+    // Entity codes are the ones used by the write-ahead log
+    public static void writeEntity(DataOutput out, byte entity, Object value) throws IOException {
+        switch (entity) {
+            case WriteAheadLog.ENTITY_HIVE:
+                writeHive(out, (Hive) value);
+                break;
+            case WriteAheadLog.ENTITY_TASK:
+                writeTask(out, (Task) value);
+                break;
+            case WriteAheadLog.ENTITY_USER:
+                writeUser(out, (User) value);
+                break;
+            case WriteAheadLog.ENTITY_REPORT:
+                writeReport(out, (Report) value);
+                break;
+            default:
+                throw new IOException("Unknown entity type: " + entity);
+        }
+    }
+    
+    public static Object readEntity(DataInput in, byte entity, IntFunction<Task> taskLookup,
+                                    IntFunction<Hive> hiveLookup) throws IOException {
+        switch (entity) {
+            case WriteAheadLog.ENTITY_HIVE:
+                return readHive(in);
+            case WriteAheadLog.ENTITY_TASK:
+                return readTask(in);
+            case WriteAheadLog.ENTITY_USER:
+                return readUser(in, taskLookup, hiveLookup);
+            case WriteAheadLog.ENTITY_REPORT:
+                return readReport(in);
+            default:
+                throw new IOException("Unknown entity type: " + entity);
+        }
+    }
+    
+    public static void writeHive(DataOutput out, Hive hive) throws IOException {
+        int flags = 0;
+        if (hive.isHealthy()) flags |= FLAG_HEALTHY;
+        if (hive.isNeedsAttention()) flags |= FLAG_NEEDS_ATTENTION;
+        if (hive.isQueenless()) flags |= FLAG_QUEENLESS;
+        
+        out.writeInt(hive.getId());
+        out.writeByte(flags);
+        out.writeDouble(hive.getHoneyLevel());
+    }
+    
+    public static Hive readHive(DataInput in) throws IOException {
+        int id = in.readInt();
+        int flags = in.readByte();
+        double honeyLevel = in.readDouble();
+        return new Hive(id, (flags & FLAG_HEALTHY) != 0, (flags & FLAG_NEEDS_ATTENTION) != 0,
+                        (flags & FLAG_QUEENLESS) != 0, honeyLevel);
+    }
+    
+    public static void writeTask(DataOutput out, Task task) throws IOException {
+        out.writeInt(task.getId());
+        writeString(out, task.getDescription());
+        out.writeByte(task.getStatus() != null ? task.getStatus().ordinal() : NULL_ENUM);
+        out.writeByte(task.getType() != null ? task.getType().ordinal() : NULL_ENUM);
+        out.writeInt(task.getHiveId());
+        writeDate(out, task.getCreatedDate());
+        writeDate(out, task.getDueDate());
+        out.writeInt(task.getAssignedUserId());
+    }
+    
+    public static Task readTask(DataInput in) throws IOException {
+        int id = in.readInt();
+        String description = readString(in);
+        byte status = in.readByte();
+        byte type = in.readByte();
+        int hiveId = in.readInt();
+        LocalDate createdDate = readDate(in);
+        LocalDate dueDate = readDate(in);
+        int assignedUserId = in.readInt();
+        
+        Task task = new Task(id, description, type != NULL_ENUM ? TYPES[type] : null, hiveId, createdDate, dueDate);
+        task.setStatus(status != NULL_ENUM ? STATUSES[status] : null);
+        task.setAssignedUserId(assignedUserId);
+        return task;
+    }
+    
+    // Assigned tasks and managed hives are stored as IDs and resolved against the given lookups
+    public static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeInt(user.getId());
+        writeString(out, user.getName());
+        writeString(out, user.getEmail());
+        writeString(out, user.getPassword());
+        out.writeByte(user.getRole() != null ? user.getRole().ordinal() : NULL_ENUM);
+        
+        List<Hive> managedHives = user.getManagedHives();
+        out.writeInt(managedHives.size());
+        for (Hive hive : managedHives) {
+            out.writeInt(hive.getId());
+        }
+        List<Task> assignedTasks = user.getAssignedTasks();
+        out.writeInt(assignedTasks.size());
+        for (Task task : assignedTasks) {
+            out.writeInt(task.getId());
+        }
+    }
+    
+    public static User readUser(DataInput in, IntFunction<Task> taskLookup, IntFunction<Hive> hiveLookup) throws IOException {
+        int id = in.readInt();
+        String name = readString(in);
+        String email = readString(in);
+        String password = readString(in);
+        byte role = in.readByte();
+        User user = new User(id, name, email, password, role != NULL_ENUM ? ROLES[role] : null);
+        
+        int hiveCount = in.readInt();
+        for (int i = 0; i < hiveCount; i++) {
+            Hive hive = hiveLookup.apply(in.readInt());
+            if (hive != null) {
+                user.getManagedHives().add(hive);
+            }
+        }
+        int taskCount = in.readInt();
+        for (int i = 0; i < taskCount; i++) {
+            Task task = taskLookup.apply(in.readInt());
+            if (task != null) {
+                user.getAssignedTasks().add(task);
+            }
+        }
+        return user;
+    }
+    
+    public static void writeReport(DataOutput out, Report report) throws IOException {
+        out.writeInt(report.getId());
+        out.writeInt(report.getUserId());
+        writeString(out, report.getUserName());
+        writeString(out, report.getContent());
+        writeIds(out, report.getRelatedHiveIds());
+        writeIds(out, report.getRelatedTaskIds());
+        writeString(out, report.getTimestamp());
+    }
+    
+    public static Report readReport(DataInput in) throws IOException {
+        int id = in.readInt();
+        int userId = in.readInt();
+        String userName = readString(in);
+        String content = readString(in);
+        IntList relatedHiveIds = readIds(in);
+        IntList relatedTaskIds = readIds(in);
+        Report report = new Report(id, userId, userName, content, relatedHiveIds, relatedTaskIds);
+        report.setTimestamp(readString(in));
+        return report;
+    }
+    
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Corrupt string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeInt(date != null ? (int) date.toEpochDay() : NULL_DATE);
+    }
+    
+    private static LocalDate readDate(DataInput in) throws IOException {
+        int epochDay = in.readInt();
+        return epochDay != NULL_DATE ? LocalDate.ofEpochDay(epochDay) : null;
+    }
+    
+    private static void writeIds(DataOutput out, IntList ids) throws IOException {
+        out.writeInt(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            out.writeInt(ids.getInt(i));
+        }
+    }
+    
+    private static IntList readIds(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt ID count: " + count);
+        }
+        IntList ids = new IntList(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readInt());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+// Converts data files written with Java serialization into the binary format of BinaryCodec.
+// Usage: java -cp src DataFileConverter [source] [target]
+public class DataFileConverter {
+    private static final int SERIALIZED_MAGIC = 0xACED;
+    private static final int HEADER_SNAPSHOT_MAGIC = 0x42534E50; // "BSNP"
+    
+    public static void main(String[] args) {
+        String source = args.length > 0 ? args[0] : "beekeeping_data.dat";
+        String target = args.length > 1 ? args[1] : source;
+        
+        try {
+            long sourceBytes = new File(source).length();
+            DataSnapshot snapshot;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(source))) {
+                snapshot = readLegacy(in);
+            }
+            
+            if (target.equals(source)) {
+                File backup = new File(source + ".bak");
+                Files.copy(new File(source).toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Original file backed up to " + backup.getPath());
+            }
+            
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target), 1 << 16))) {
+                BinaryCodec.writeSnapshot(out, snapshot.getGeneration(), snapshot.getHives(), snapshot.getTasks(),
+                                          snapshot.getUsers(), snapshot.getReports());
+            }
+            
+            System.out.println("Converted " + source + " (" + sourceBytes + " bytes) to " + target +
+                               " (" + new File(target).length() + " bytes) - Users: " +
+                               snapshot.getUsers().size() + ", Hives: " + snapshot.getHives().size() +
+                               ", Tasks: " + snapshot.getTasks().size() + ", Reports: " + snapshot.getReports().size());
+        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Conversion failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    public static boolean isLegacyFormat(int magic) {
+        return (magic >>> 16) == SERIALIZED_MAGIC || magic == HEADER_SNAPSHOT_MAGIC;
+    }
+    
+    // Reads both the original serialized format and the serialized format with a generation header
+    @SuppressWarnings("unchecked")
+    public static DataSnapshot readLegacy(InputStream input) throws IOException, ClassNotFoundException {
+        BufferedInputStream in = input instanceof BufferedInputStream ? (BufferedInputStream) input : new BufferedInputStream(input);
+        DataInputStream header = new DataInputStream(in);
+        long generation = 0;
+        in.mark(12);
+        if (header.readInt() == HEADER_SNAPSHOT_MAGIC) {
+            generation = header.readLong();
+        } else {
+            in.reset();
+        }
+        
+        ObjectInputStream ois = new ObjectInputStream(in);
+        List<Hive> hives = (List<Hive>) ois.readObject();
+        List<Task> tasks = (List<Task>) ois.readObject();
+        List<User> users = (List<User>) ois.readObject();
+        List<Report> reports = (List<Report>) ois.readObject();
+        return new DataSnapshot(generation, hives, tasks, users, reports);
+    }
+}
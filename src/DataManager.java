@@ -1,27 +1,148 @@
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public class DataManager {
     private static final String DATA_FILE = "beekeeping_data.dat";
+    private static final String WAL_FILE = "beekeeping_data.wal";
+    private static final String LOCK_FILE = "beekeeping_data.lock";
+    private static final String SEQUENCE_FILE = "beekeeping_data.seq";
+    private static final boolean WAL_ENABLED = !Boolean.getBoolean("beehive.wal.disabled");
+    private static final int CHECKPOINT_RECORDS = Integer.getInteger("beehive.wal.checkpointRecords", 500);
+    private static final long CHECKPOINT_BYTES = Long.getLong("beehive.wal.checkpointBytes", 4L * 1024 * 1024);
+    private static final Durability DURABILITY = Durability.fromProperty(System.getProperty("beehive.durability"));
+    private static final long FSYNC_INTERVAL_MS = Long.getLong("beehive.durability.fsyncIntervalMs", 1000);
+    private static final boolean WRITE_BEHIND_ENABLED = Boolean.getBoolean("beehive.writeBehind.enabled");
+    private static final long WRITE_BEHIND_INTERVAL_MS = Long.getLong("beehive.writeBehind.intervalMs", 200);
+    private static final int WRITE_BEHIND_BATCH_SIZE = Integer.getInteger("beehive.writeBehind.batchSize", 64);
+    private static final int LOCK_ATTEMPTS = 5;
+    private static final long LOCK_RETRY_DELAY_MS = 10;
+    private static final int ID_BLOCK_SIZE = Integer.getInteger("beehive.ids.blockSize", 32);
+    // Keeps hives only in the columns of the fleet totals instead of as one object per hive
+    private static final boolean COLUMNAR_HIVES = Boolean.getBoolean("beehive.hives.columnar");
     private static DataManager instance = null;
     private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private ActivityLogger logger = ActivityLogger.getInstance();
+    // The data lock file guards the manifest, the segments and the write-ahead log for every session
+    private FileChannel lockChannel;
+    private FileLock storageLock;
+    // Activity log messages held back until the data lock is released, see lockStorage
+    private final List<String> deferredMessages = new ArrayList<>();
+    private IdSequences idSequences;
     
-    private Map<Integer, Hive> hives;
-    private Map<Integer, Task> tasks;
-    private Map<Integer, User> users;
-    private Map<Integer, Report> reports;
+    // Immutable maps replaced on every write under the write lock, so readers never lock or copy
+    private volatile PersistentIntMap<Hive> hives = PersistentIntMap.empty();
+    private volatile PersistentIntMap<Task> tasks = PersistentIntMap.empty();
+    private volatile PersistentIntMap<User> users = PersistentIntMap.empty();
+    private volatile PersistentIntMap<Report> reports = PersistentIntMap.empty();
+    private volatile TaskIndex taskIndex = TaskIndex.EMPTY;
+    private volatile HiveAggregates hiveAggregates = HiveAggregates.EMPTY;
+    
+    // Normalized email to user ID, and the email each user was indexed under so changed emails can be unindexed.
+    // Only writers read indexedEmails, always under the write lock.
+    private volatile ConcurrentHashMap<String, Integer> emailIndex = new ConcurrentHashMap<>();
+    private IntObjectMap<String> indexedEmails = new IntObjectMap<>();
+    
+    // Write-ahead log state: the snapshot generation our maps are based on and how far into the log we have applied
+    private WriteAheadLog wal;
+    private long snapshotGeneration = -1;
+    private long walOffset = WriteAheadLog.HEADER_SIZE;
+    private int walRecordsSinceCheckpoint;
+    
+    // Per-entity segment files: the generation of each segment in memory, and which ones changed since the last checkpoint
+    private SegmentedStore store = new SegmentedStore(DATA_FILE);
+    private long[] segmentGenerations = SegmentedStore.emptySegmentGenerations();
+    private boolean[] dirtySegments = new boolean[WriteAheadLog.ENTITY_REPORT + 1];
+    
+    // Modification time and length of the data file as of our last load or save, used to skip unchanged reloads
+    private long snapshotModified = -1;
+    private long snapshotLength = -1;
+    // Set when memory could not be put back in line with storage after a failed write; the next refresh reloads everything
+    private boolean reloadRequired;
+    
+    // Write-behind mode: mutations applied in memory but not yet written, and the future completed once they are
+    private WriteBehindFlusher flusher;
+    private List<WriteAheadLog.Record> pendingRecords = new ArrayList<>();
+    private CompletableFuture<Void> pendingDurability = new CompletableFuture<>();
+    
+    // Hot path metrics, reported through the admin menu and the Prometheus dump
+    private final Metrics metrics = Metrics.getInstance();
+    private final LatencyHistogram saveTimer = metrics.timer("beehive_data_save_seconds", "Time taken by saveDataToFile, including lock wait");
+    private final LatencyHistogram reloadTimer = metrics.timer("beehive_data_reload_seconds", "Time taken by reloadDataFromFile, including lock wait");
+    private final LatencyHistogram commitTimer = metrics.timer("beehive_data_commit_seconds", "Time to apply and persist one mutation");
+    private final LatencyHistogram emailLookupTimer = metrics.timer("beehive_data_get_user_by_email_seconds", "Time taken by getUserByEmail");
+    private final LatencyHistogram lockWaitTimer = metrics.timer("beehive_data_lock_wait_seconds", "Time spent waiting for the data write lock");
+    private final LatencyHistogram lockHoldTimer = metrics.timer("beehive_data_lock_hold_seconds", "Time the data write lock was held");
+    private final LatencyHistogram snapshotBytes = metrics.histogram("beehive_data_snapshot_bytes", "Bytes of segment files written per snapshot");
+    private final LatencyHistogram walAppendBytes = metrics.histogram("beehive_data_wal_append_bytes", "Bytes appended to the write-ahead log per commit or group commit");
+    private final LatencyHistogram reloadEntities = metrics.histogram("beehive_data_reload_entities", "Entities held after a reload that read changes");
+    private final LongAdder storageErrors = metrics.counter("beehive_data_storage_errors_total", "Failed reads, writes and file lock operations on the data files");
+    private long writeLockAcquiredAt;
+    
+    // How hard writes are pushed to the disk: not at all, on every commit, or for the log on a timer
+    public enum Durability {
+        NONE, FSYNC_ON_COMMIT, FSYNC_PERIODIC;
+        
+        static Durability fromProperty(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FSYNC_ON_COMMIT;
+            }
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+    
+    private interface Mutation {
+        void apply();
+    }
     
     private DataManager() {
-        hives = new ConcurrentHashMap<>();
-        tasks = new ConcurrentHashMap<>();
-        users = new ConcurrentHashMap<>();
-        reports = new ConcurrentHashMap<>();
+        try {
+            lockChannel = FileChannel.open(Paths.get(LOCK_FILE), StandardOpenOption.CREATE,
+                                         StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            logger.logSystemActivity("Could not open data lock file, continuing without file locking: " + e.getMessage());
+        }
+        try {
+            idSequences = new IdSequences(SEQUENCE_FILE, ID_BLOCK_SIZE, DURABILITY != Durability.NONE);
+        } catch (IOException e) {
+            logger.logSystemActivity("Could not open ID sequence file, allocating IDs from loaded data: " + e.getMessage());
+        }
+        if (WAL_ENABLED) {
+            try {
+                wal = new WriteAheadLog(WAL_FILE);
+                if (DURABILITY == Durability.FSYNC_PERIODIC) {
+                    wal.startPeriodicSync(FSYNC_INTERVAL_MS);
+                }
+            } catch (IOException e) {
+                wal = null;
+                logger.logSystemActivity("Could not open write-ahead log, falling back to full snapshots: " + e.getMessage());
+            }
+        }
+        metrics.gauge("beehive_data_hives", "Hives in memory", () -> getHives().size());
+        metrics.gauge("beehive_data_tasks", "Tasks in memory", () -> tasks.size());
+        metrics.gauge("beehive_data_users", "Users in memory", () -> users.size());
+        metrics.gauge("beehive_data_reports", "Reports in memory", () -> reports.size());
+        metrics.gauge("beehive_data_pending_writes", "Write-behind mutations not written yet", () -> pendingRecords.size());
+        metrics.gauge("beehive_fleet_hives_healthy", "Hives marked healthy", () -> hiveAggregates.getHealthy());
+        metrics.gauge("beehive_fleet_hives_needing_attention", "Hives marked as needing attention", () -> hiveAggregates.getNeedsAttention());
+        metrics.gauge("beehive_fleet_hives_queenless", "Hives marked queenless", () -> hiveAggregates.getQueenless());
+        for (Task.Status status : Task.Status.values()) {
+            metrics.gauge("beehive_fleet_tasks_" + status.name().toLowerCase(), "Tasks with status " + status,
+                          () -> taskIndex.countWithStatus(status));
+        }
         loadDataFromFile();
+        if (WRITE_BEHIND_ENABLED) {
+            flusher = new WriteBehindFlusher(this::flush, WRITE_BEHIND_INTERVAL_MS, WRITE_BEHIND_BATCH_SIZE);
+        }
         logger.logSystemActivity("DataManager initialized");
     }
     
@@ -32,137 +153,739 @@ public class DataManager {
         return instance;
     }
     
+    // Folds the current state into a new snapshot. In WAL mode this is a checkpoint that also empties the log.
     public void saveDataToFile() {
-        lock.writeLock().lock();
+        long start = System.nanoTime();
+        lockWrite();
         try {
-            FileOutputStream fos = null;
-            FileChannel channel = null;
-            FileLock fileLock = null;
-            
+            flushPending();
             try {
-                fos = new FileOutputStream(DATA_FILE);
-                channel = fos.getChannel();
-                fileLock = channel.tryLock();
-                
-                if (fileLock != null) {
-                    try (ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-                        oos.writeObject(new ArrayList<>(hives.values()));
-                        oos.writeObject(new ArrayList<>(tasks.values()));
-                        oos.writeObject(new ArrayList<>(users.values()));
-                        oos.writeObject(new ArrayList<>(reports.values()));
-                        logger.logSystemActivity("Data saved to file");
+                lockStorage(false);
+                if (wal == null) {
+                    if (writeSnapshot(snapshotGeneration + 1)) {
+                        snapshotGeneration++;
                     }
                 } else {
-                    logger.logSystemActivity("Could not acquire file lock for writing");
+                    catchUpWithLog();
+                    checkpoint();
                 }
-            } catch (IOException e) {
-                logger.logSystemActivity("Error saving data to file: " + e.getMessage());
+            } catch (IOException | ClassNotFoundException e) {
+                reportStorageError(wal == null ? "Error saving data to file" : "Error checkpointing write-ahead log", e);
             } finally {
-                if (fileLock != null) {
-                    try {
-                        fileLock.release();
-                    } catch (IOException e) {
-                        logger.logSystemActivity("Error releasing file lock: " + e.getMessage());
-                    }
+                unlockStorage();
+            }
+        } finally {
+            unlockWrite();
+            saveTimer.recordSince(start);
+        }
+    }
+    
+    // Writes every pending write-behind mutation now as one group commit
+    public void flush() {
+        lockWrite();
+        try {
+            flushPending();
+        } finally {
+            unlockWrite();
+        }
+    }
+    
+    // Completes once every mutation made so far is written to storage
+    public CompletableFuture<Void> whenDurable() {
+        lock.readLock().lock();
+        try {
+            return pendingRecords.isEmpty() ? CompletableFuture.completedFuture(null) : pendingDurability;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void flushPending() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        
+        boolean flushed = false;
+        try {
+            lockStorage(false);
+            if (wal == null) {
+                refreshFromStorage();
+                flushed = writeSnapshot(snapshotGeneration + 1);
+                if (flushed) {
+                    snapshotGeneration++;
                 }
-                if (channel != null) {
-                    try {
-                        channel.close();
-                    } catch (IOException e) {
-                        logger.logSystemActivity("Error closing file channel: " + e.getMessage());
-                    }
+            } else {
+                catchUpWithLog();
+                long appendedFrom = walOffset;
+                walOffset = wal.append(pendingRecords);
+                walAppendBytes.record(walOffset - appendedFrom);
+                walRecordsSinceCheckpoint += pendingRecords.size();
+                if (DURABILITY == Durability.FSYNC_ON_COMMIT) {
+                    wal.force();
                 }
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                        logger.logSystemActivity("Error closing file output stream: " + e.getMessage());
-                    }
+                flushed = true;
+                
+                if (walRecordsSinceCheckpoint >= CHECKPOINT_RECORDS || walOffset >= CHECKPOINT_BYTES) {
+                    checkpoint();
                 }
             }
+        } catch (IOException | ClassNotFoundException e) {
+            reportStorageError("Error flushing pending writes", e);
         } finally {
-            lock.writeLock().unlock();
+            unlockStorage();
+        }
+        
+        // On failure the records stay pending and are retried by the next flush
+        if (flushed) {
+            CompletableFuture<Void> durability = pendingDurability;
+            pendingRecords = new ArrayList<>();
+            pendingDurability = new CompletableFuture<>();
+            durability.complete(null);
         }
     }
     
-    private void loadDataFromFile() {
+    // Writes every changed entity type to a new segment file and then atomically replaces the manifest,
+    // so readers and crashes only ever see the previous or the new set of segments, never a mix.
+    // Caller must hold the exclusive data lock.
+    private boolean writeSnapshot(long generation) {
+        boolean force = DURABILITY != Durability.NONE;
+        long[] newSegmentGenerations = segmentGenerations.clone();
+        
+        try {
+            for (byte entity : SegmentedStore.ENTITIES) {
+                if (dirtySegments[entity] || segmentGenerations[entity] < 0) {
+                    store.writeSegment(entity, generation, entitiesOf(entity), force);
+                    newSegmentGenerations[entity] = generation;
+                }
+            }
+            store.publishManifest(new SegmentedStore.Manifest(generation, newSegmentGenerations), force);
+            recordSnapshotStamp();
+            snapshotBytes.record(writtenBytes(segmentGenerations, newSegmentGenerations));
+            
+            // Replaced segments and ones orphaned by a crash before their manifest was published
+            store.deleteStaleSegments(newSegmentGenerations);
+        } catch (IOException e) {
+            for (byte entity : SegmentedStore.ENTITIES) {
+                if (newSegmentGenerations[entity] != segmentGenerations[entity]) {
+                    store.deleteSegment(entity, newSegmentGenerations[entity]);
+                }
+            }
+            reportStorageError("Error saving data to file", e);
+            return false;
+        }
+        
+        StringBuilder written = new StringBuilder();
+        for (byte entity : SegmentedStore.ENTITIES) {
+            if (newSegmentGenerations[entity] != segmentGenerations[entity]) {
+                written.append(written.length() > 0 ? ", " : "").append(SegmentedStore.entityName(entity));
+            }
+            dirtySegments[entity] = false;
+        }
+        segmentGenerations = newSegmentGenerations;
+        logSystemActivity("Data saved to file - Segments: " + (written.length() > 0 ? written : "none"));
+        return true;
+    }
+    
+    private long writtenBytes(long[] previousGenerations, long[] newGenerations) {
+        long bytes = new File(DATA_FILE).length();
+        for (byte entity : SegmentedStore.ENTITIES) {
+            if (newGenerations[entity] != previousGenerations[entity]) {
+                bytes += store.segmentFile(entity, newGenerations[entity]).length();
+            }
+        }
+        return bytes;
+    }
+    
+    private Collection<?> entitiesOf(byte entity) {
+        switch (entity) {
+            case WriteAheadLog.ENTITY_HIVE:
+                return getHives().values();
+            case WriteAheadLog.ENTITY_TASK:
+                return tasks.values();
+            case WriteAheadLog.ENTITY_USER:
+                return users.values();
+            default:
+                return reports.values();
+        }
+    }
+    
+    // The data file is replaced by rename and the log is reset in place, so sessions coordinate through one
+    // separate lock file. It is the only file lock any session waits for in the kernel, and nothing is
+    // written to the activity log while it is held: the log has a file lock of its own, and waiting for
+    // one file lock while holding another can make Linux fail the lock call with EDEADLK (see FileLocks).
+    // A failed lock call is retried a few times with a growing delay before the operation gives up.
+    private void lockStorage(boolean shared) throws IOException {
+        if (lockChannel == null) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                storageLock = lockChannel.lock(0, Long.MAX_VALUE, shared);
+                return;
+            } catch (IOException e) {
+                // An interrupt closes the channel, so there is nothing left to retry on
+                if (attempt == LOCK_ATTEMPTS || !lockChannel.isOpen()) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_DELAY_MS << (attempt - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the data lock file");
+            }
+        }
+    }
+    
+    private void unlockStorage() {
+        FileLock held = storageLock;
+        storageLock = null;
+        if (held != null) {
+            try {
+                held.release();
+            } catch (IOException e) {
+                reportStorageError("Error releasing data lock file", e);
+            }
+        }
+        for (String message : deferredMessages) {
+            logger.logSystemActivity(message);
+        }
+        deferredMessages.clear();
+    }
+    
+    private void logSystemActivity(String message) {
+        if (storageLock != null) {
+            deferredMessages.add(message);
+        } else {
+            logger.logSystemActivity(message);
+        }
+    }
+    
+    // Caller must hold the data lock so the stamp matches the content that was read or written
+    private void recordSnapshotStamp() {
+        File file = new File(DATA_FILE);
+        snapshotModified = file.lastModified();
+        snapshotLength = file.length();
+    }
+    
+    private long readSnapshotGeneration() throws IOException {
+        File file = new File(DATA_FILE);
+        if (!file.exists()) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int magic = in.readInt();
+            if (magic != SegmentedStore.MANIFEST_MAGIC && magic != BinaryCodec.SNAPSHOT_MAGIC) {
+                return 0;
+            }
+            in.readInt();
+            return in.readLong();
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+    
+    // Single-file snapshots from older versions replace everything and mark every segment for the next checkpoint
+    private void installSnapshot(DataSnapshot snapshot) {
+        PersistentIntMap<Task> newTasks = PersistentIntMap.empty();
+        for (Task task : snapshot.getTasks()) {
+            newTasks = newTasks.plus(task.getId(), task);
+        }
+        PersistentIntMap<User> newUsers = PersistentIntMap.empty();
+        for (User user : snapshot.getUsers()) {
+            newUsers = newUsers.plus(user.getId(), user);
+        }
+        PersistentIntMap<Report> newReports = PersistentIntMap.empty();
+        for (Report report : snapshot.getReports()) {
+            newReports = newReports.plus(report.getId(), report);
+        }
         
+        installHives(snapshot.getHives());
+        installTasks(newTasks);
+        installUsers(newUsers);
+        reports = newReports;
+        snapshotGeneration = snapshot.getGeneration();
+        segmentGenerations = SegmentedStore.emptySegmentGenerations();
+        Arrays.fill(dirtySegments, true);
+    }
+    
+    // Loads only the segments whose generation differs from the one already in memory
+    private void installSegments(SegmentedStore.Manifest manifest) throws IOException {
+        boolean referencesChanged = false;
+        for (byte entity : SegmentedStore.ENTITIES) {
+            long segmentGeneration = manifest.getSegmentGeneration(entity);
+            if (segmentGeneration == segmentGenerations[entity] && !dirtySegments[entity]) {
+                continue;
+            }
+            
+            List<Object> values = segmentGeneration >= 0
+                ? store.readSegment(entity, segmentGeneration, tasks::get, this::getHive)
+                : Collections.emptyList();
+            switch (entity) {
+                case WriteAheadLog.ENTITY_HIVE:
+                    List<Hive> newHives = new ArrayList<>(values.size());
+                    for (Object value : values) {
+                        newHives.add((Hive) value);
+                    }
+                    installHives(newHives);
+                    referencesChanged = true;
+                    break;
+                case WriteAheadLog.ENTITY_TASK:
+                    PersistentIntMap<Task> newTasks = PersistentIntMap.empty();
+                    for (Object value : values) {
+                        newTasks = newTasks.plus(((Task) value).getId(), (Task) value);
+                    }
+                    installTasks(newTasks);
+                    referencesChanged = true;
+                    break;
+                case WriteAheadLog.ENTITY_USER:
+                    PersistentIntMap<User> newUsers = PersistentIntMap.empty();
+                    for (Object value : values) {
+                        newUsers = newUsers.plus(((User) value).getId(), (User) value);
+                    }
+                    installUsers(newUsers);
+                    break;
+                case WriteAheadLog.ENTITY_REPORT:
+                    PersistentIntMap<Report> newReports = PersistentIntMap.empty();
+                    for (Object value : values) {
+                        newReports = newReports.plus(((Report) value).getId(), (Report) value);
+                    }
+                    reports = newReports;
+                    break;
+            }
+            segmentGenerations[entity] = segmentGeneration;
+        }
+        if (referencesChanged) {
+            relinkUsers();
+        }
+        snapshotGeneration = manifest.getGeneration();
+        Arrays.fill(dirtySegments, false);
+    }
+    
+    // Reads the manifest (or an older single-file snapshot) and replays the log on top of it.
+    // Returns false when there is no data file yet. Caller must hold at least a shared data lock.
+    private boolean loadFromStorage() throws IOException, ClassNotFoundException {
         File file = new File(DATA_FILE);
         if (!file.exists()) {
-            initializeSampleData();
+            return false;
+        }
+        
+        try (FileInputStream fis = new FileInputStream(DATA_FILE)) {
+            BufferedInputStream in = new BufferedInputStream(fis, 1 << 16);
+            DataInputStream data = new DataInputStream(in);
+            in.mark(4);
+            int magic = data.readInt();
+            in.reset();
+            recordSnapshotStamp();
+            if (magic == SegmentedStore.MANIFEST_MAGIC) {
+                installSegments(store.readManifest(data));
+            } else if (DataFileConverter.isLegacyFormat(magic)) {
+                // Serialized files from older versions are converted by the next checkpoint
+                installSnapshot(DataFileConverter.readLegacy(in));
+            } else {
+                installSnapshot(BinaryCodec.readSnapshot(data));
+            }
+        }
+        walOffset = WriteAheadLog.HEADER_SIZE;
+        walRecordsSinceCheckpoint = 0;
+        
+        // A log from an older generation was already folded into the snapshot before a crash, so it is skipped
+        if (wal != null && wal.readGeneration() == snapshotGeneration) {
+            replayLog();
+        }
+        reloadRequired = false;
+        return true;
+    }
+    
+    private int replayLog() throws IOException {
+        WriteAheadLog.Tail tail = wal.readFrom(walOffset);
+        for (WriteAheadLog.Record record : tail.records) {
+            applyRecord(record);
+        }
+        if (!tail.records.isEmpty()) {
+            relinkUsers();
+        }
+        walRecordsSinceCheckpoint += tail.records.size();
+        walOffset = tail.endOffset;
+        return tail.records.size();
+    }
+    
+    // Brings the maps up to date with storage, reading only what changed since we last looked.
+    // Returns false when nothing changed. Caller must hold at least a shared data lock.
+    private boolean refreshFromStorage() throws IOException, ClassNotFoundException {
+        boolean changed = readChangesFromStorage();
+        if (changed && !pendingRecords.isEmpty()) {
+            // Mutations waiting for the write-behind flush are newer than anything in storage
+            for (WriteAheadLog.Record record : pendingRecords) {
+                applyRecord(record);
+            }
+            relinkUsers();
+        }
+        return changed;
+    }
+    
+    private boolean readChangesFromStorage() throws IOException, ClassNotFoundException {
+        if (reloadRequired) {
+            return loadFromStorage();
+        }
+        long diskGeneration = readSnapshotGeneration();
+        if (wal == null) {
+            File file = new File(DATA_FILE);
+            if (diskGeneration == snapshotGeneration && file.lastModified() == snapshotModified
+                    && file.length() == snapshotLength) {
+                return false;
+            }
+            return loadFromStorage();
+        }
+        
+        if (diskGeneration != snapshotGeneration) {
+            // Another session checkpointed since we last looked
+            return loadFromStorage();
+        }
+        // Within one generation the log only grows, so new records are exactly the bytes past our offset
+        if (wal.readGeneration() != snapshotGeneration || wal.size() <= walOffset) {
+            return false;
+        }
+        return replayLog() > 0;
+    }
+    
+    // Applies records appended by other sessions. Caller must hold the exclusive data lock.
+    private void catchUpWithLog() throws IOException, ClassNotFoundException {
+        refreshFromStorage();
+        if (snapshotGeneration < 0) {
             return;
         }
         
-        FileInputStream fis = null;
-        FileChannel channel = null;
-        FileLock fileLock = null;
+        if (wal.readGeneration() != snapshotGeneration) {
+            wal.reset(snapshotGeneration);
+            walOffset = WriteAheadLog.HEADER_SIZE;
+            walRecordsSinceCheckpoint = 0;
+        } else if (wal.size() > walOffset) {
+            // Drop a torn record left behind by a crashed writer so new records stay readable
+            wal.truncate(walOffset);
+        }
+    }
+    
+    // Caller must hold the exclusive data lock and be caught up with the log
+    private void checkpoint() throws IOException {
+        long nextGeneration = snapshotGeneration + 1;
+        if (writeSnapshot(nextGeneration)) {
+            wal.reset(nextGeneration);
+            snapshotGeneration = nextGeneration;
+            walOffset = WriteAheadLog.HEADER_SIZE;
+            walRecordsSinceCheckpoint = 0;
+            logSystemActivity("Write-ahead log checkpointed - Generation: " + nextGeneration);
+        }
+    }
+    
+    // Applies a mutation and persists it: one appended log record in WAL mode, a full snapshot otherwise.
+    // In write-behind mode the record is queued for the next group commit instead.
+    // Returns false when the change could not be stored; memory is then reloaded from storage.
+    private boolean commit(byte entity, byte op, Object payload, Mutation mutation) {
+        long start = System.nanoTime();
+        try {
+            if (persist(entity, op, payload, mutation)) {
+                return true;
+            }
+            discardUnsavedChange(entity);
+            return false;
+        } finally {
+            commitTimer.recordSince(start);
+        }
+    }
+    
+    private boolean persist(byte entity, byte op, Object payload, Mutation mutation) {
+        if (flusher != null) {
+            WriteAheadLog.Record record;
+            try {
+                record = new WriteAheadLog.Record(entity, op, encode(entity, payload));
+            } catch (IOException e) {
+                reportStorageError("Error encoding pending write", e);
+                return false;
+            }
+            mutation.apply();
+            dirtySegments[entity] = true;
+            pendingRecords.add(record);
+            flusher.onMutation(pendingRecords.size());
+            return true;
+        }
         
+        boolean stored = false;
         try {
-            fis = new FileInputStream(DATA_FILE);
-            channel = fis.getChannel();
-            fileLock = channel.tryLock(0, Long.MAX_VALUE, true);
-            
-            if (fileLock != null) {
-                try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-                    List<Hive> loadedHives = (List<Hive>) ois.readObject();
-                    List<Task> loadedTasks = (List<Task>) ois.readObject();
-                    List<User> loadedUsers = (List<User>) ois.readObject();
-                    List<Report> loadedReports = (List<Report>) ois.readObject();
-                    
-                    // Use parallel streams to process the data
-                    loadedHives.parallelStream().forEach(hive -> hives.put(hive.getId(), hive));
-                    loadedTasks.parallelStream().forEach(task -> tasks.put(task.getId(), task));
-                    loadedUsers.parallelStream().forEach(user -> users.put(user.getId(), user));
-                    loadedReports.parallelStream().forEach(report -> reports.put(report.getId(), report));
-                    
-                    logger.logSystemActivity("Data loaded from file - Users: " + users.size() + 
-                                           ", Hives: " + hives.size() + ", Tasks: " + tasks.size() + 
-                                           ", Reports: " + reports.size());
-                }
-            } else {
-                if (users.isEmpty() && hives.isEmpty() && tasks.isEmpty() && reports.isEmpty()) {
-                    initializeSampleData();
+            lockStorage(false);
+            if (wal == null) {
+                mutation.apply();
+                dirtySegments[entity] = true;
+                stored = writeSnapshot(snapshotGeneration + 1);
+                if (stored) {
+                    snapshotGeneration++;
                 }
-                logger.logSystemActivity("Could not acquire file lock for reading");
+                return stored;
+            }
+        
+            catchUpWithLog();
+            mutation.apply();
+            dirtySegments[entity] = true;
+            long appendedFrom = walOffset;
+            walOffset = wal.append(Collections.singletonList(new WriteAheadLog.Record(entity, op, encode(entity, payload))));
+            walAppendBytes.record(walOffset - appendedFrom);
+            walRecordsSinceCheckpoint++;
+            if (DURABILITY == Durability.FSYNC_ON_COMMIT) {
+                wal.force();
+            }
+            stored = true;
+            
+            // The record is in the log, so a failed checkpoint is retried later and does not fail the write
+            if (walRecordsSinceCheckpoint >= CHECKPOINT_RECORDS || walOffset >= CHECKPOINT_BYTES) {
+                checkpoint();
             }
         } catch (IOException | ClassNotFoundException e) {
-            initializeSampleData();
-            logger.logSystemActivity("Error loading data from file, initialized with sample data: " + e.getMessage());
+            reportStorageError(stored ? "Error checkpointing write-ahead log" : "Error writing to write-ahead log", e);
         } finally {
-            if (fileLock != null) {
-                try {
-                    fileLock.release();
-                } catch (IOException e) {
-                    logger.logSystemActivity("Error releasing file lock: " + e.getMessage());
+            unlockStorage();
+        }
+        return stored;
+    }
+    
+    // Callers change the shared objects before they commit, so after a failed write memory no longer matches
+    // storage. The entity type is read back from its segment and the log; if even that fails, the next
+    // refresh reloads everything. Task assignments are mirrored in the users' task lists, which callers change
+    // together with the task, so users are read back along with tasks.
+    private void discardUnsavedChange(byte entity) {
+        dirtySegments[entity] = true;
+        if (entity == WriteAheadLog.ENTITY_TASK) {
+            dirtySegments[WriteAheadLog.ENTITY_USER] = true;
+        }
+        try {
+            lockStorage(true);
+            if (loadFromStorage() && !pendingRecords.isEmpty()) {
+                for (WriteAheadLog.Record record : pendingRecords) {
+                    applyRecord(record);
                 }
+                relinkUsers();
             }
-            if (channel != null) {
-                try {
-                    channel.close();
-                } catch (IOException e) {
-                    logger.logSystemActivity("Error closing file channel: " + e.getMessage());
-                }
+        } catch (IOException | ClassNotFoundException e) {
+            reloadRequired = true;
+            reportStorageError("Error reloading data after a failed write", e);
+        } finally {
+            unlockStorage();
+        }
+    }
+    
+    private byte[] encode(byte entity, Object payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (payload instanceof Integer) {
+            out.writeInt((Integer) payload);
+            return bytes.toByteArray();
+        }
+        BinaryCodec.writeEntity(out, entity, payload);
+        return bytes.toByteArray();
+    }
+    
+    private void applyRecord(WriteAheadLog.Record record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.payload));
+        dirtySegments[record.entity] = true;
+        if (record.op == WriteAheadLog.OP_REMOVE) {
+            int id = in.readInt();
+            switch (record.entity) {
+                case WriteAheadLog.ENTITY_USER:
+                    removeUserEntry(id);
+                    break;
+                case WriteAheadLog.ENTITY_REPORT:
+                    reports = reports.minus(id);
+                    break;
+            }
+            return;
+        }
+        
+        switch (record.entity) {
+            case WriteAheadLog.ENTITY_HIVE:
+                Hive hive = BinaryCodec.readHive(in);
+                putHive(hive);
+                break;
+            case WriteAheadLog.ENTITY_TASK:
+                Task task = BinaryCodec.readTask(in);
+                putTask(task);
+                break;
+            case WriteAheadLog.ENTITY_USER:
+                User user = BinaryCodec.readUser(in, tasks::get, this::getHive);
+                putUser(user);
+                break;
+            case WriteAheadLog.ENTITY_REPORT:
+                Report report = BinaryCodec.readReport(in);
+                reports = reports.plus(report.getId(), report);
+                break;
+        }
+    }
+    
+    // Hive writes go through these so the fleet totals always match the published hives map.
+    // With columnar hives the columns of the fleet totals are the only copy.
+    private void putHive(Hive hive) {
+        hiveAggregates = hiveAggregates.with(hive);
+        if (!COLUMNAR_HIVES) {
+            hives = hives.plus(hive.getId(), hive);
+        }
+    }
+    
+    private void installHives(Collection<Hive> newHives) {
+        hiveAggregates = HiveAggregates.of(newHives);
+        if (!COLUMNAR_HIVES) {
+            PersistentIntMap<Hive> map = PersistentIntMap.empty();
+            for (Hive hive : newHives) {
+                map = map.plus(hive.getId(), hive);
             }
-            if (fis != null) {
+            hives = map;
+        }
+    }
+    
+    // Task writes go through these so the task indexes always match the published tasks map
+    private void putTask(Task task) {
+        taskIndex = taskIndex.with(task);
+        tasks = tasks.plus(task.getId(), task);
+    }
+    
+    private void installTasks(PersistentIntMap<Task> newTasks) {
+        taskIndex = TaskIndex.of(newTasks.values());
+        tasks = newTasks;
+    }
+    
+    // User writes go through these so the email index always matches the published users map
+    private void putUser(User user) {
+        indexEmail(user.getId(), user.getEmail());
+        users = users.plus(user.getId(), user);
+    }
+    
+    private void removeUserEntry(int id) {
+        users = users.minus(id);
+        String email = indexedEmails.remove(id);
+        if (email != null) {
+            emailIndex.remove(email, id);
+        }
+    }
+    
+    private void installUsers(PersistentIntMap<User> newUsers) {
+        ConcurrentHashMap<String, Integer> newEmailIndex = new ConcurrentHashMap<>(newUsers.size() * 2);
+        IntObjectMap<String> newIndexedEmails = new IntObjectMap<>(newUsers.size());
+        for (User user : newUsers.values()) {
+            String email = normalizeEmail(user.getEmail());
+            if (email != null) {
+                newEmailIndex.put(email, user.getId());
+                newIndexedEmails.put(user.getId(), email);
+            }
+        }
+        emailIndex = newEmailIndex;
+        indexedEmails = newIndexedEmails;
+        users = newUsers;
+    }
+    
+    private void indexEmail(int id, String rawEmail) {
+        String email = normalizeEmail(rawEmail);
+        String previous = email != null ? indexedEmails.put(id, email) : indexedEmails.remove(id);
+        if (previous != null && !previous.equals(email)) {
+            emailIndex.remove(previous, id);
+        }
+        if (email != null) {
+            emailIndex.put(email, id);
+        }
+    }
+    
+    private static String normalizeEmail(String email) {
+        return email != null ? email.trim().toLowerCase(Locale.ROOT) : null;
+    }
+    
+    // Replayed records replace task and hive instances, so point every user back at the current ones
+    private void relinkUsers() {
+        for (User user : users.values()) {
+            user.getAssignedTasks().replaceAll(task -> tasks.getOrDefault(task.getId(), task));
+            user.getManagedHives().replaceAll(hive -> getHives().getOrDefault(hive.getId(), hive));
+        }
+    }
+    
+    // Failed file lock acquisitions end up here as well, so the counter shows contention problems
+    private void reportStorageError(String message, Exception e) {
+        storageErrors.increment();
+        logSystemActivity(message + ": " + e.getMessage());
+    }
+    
+    // The write lock, timed: how long callers wait for it and how long the outermost holder keeps it
+    private void lockWrite() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        if (lock.getWriteHoldCount() == 1) {
+            writeLockAcquiredAt = System.nanoTime();
+            lockWaitTimer.record(writeLockAcquiredAt - start);
+        }
+    }
+    
+    private void unlockWrite() {
+        if (lock.getWriteHoldCount() == 1) {
+            lockHoldTimer.recordSince(writeLockAcquiredAt);
+        }
+        lock.writeLock().unlock();
+    }
+    
+    private void loadDataFromFile() {
+        boolean loaded = false;
+        boolean unreadable = false;
+        
+        // A temp file left behind by a crash during a save never replaced the data file
+        new File(DATA_FILE + ".tmp").delete();
+        
+        try {
+            lockStorage(true);
+            loaded = loadFromStorage();
+            if (loaded) {
+                logSystemActivity("Data loaded from file - Users: " + users.size() +
+                                       ", Hives: " + getHives().size() + ", Tasks: " + tasks.size() +
+                                       ", Reports: " + reports.size());
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            unreadable = new File(DATA_FILE).exists();
+            reportStorageError("Error loading data from file", e);
+        } finally {
+            unlockStorage();
+        }
+        
+        // Data from a single-file snapshot is split into segment files right away
+        if (loaded && segmentGenerations[WriteAheadLog.ENTITY_HIVE] < 0) {
+            saveDataToFile();
+        }
+        
+        if (unreadable) {
+            // Keep the unreadable file for recovery instead of overwriting it with sample data
+            String suffix = ".corrupt-" + System.currentTimeMillis();
+            File quarantined = new File(DATA_FILE + suffix);
+            if (!new File(DATA_FILE).renameTo(quarantined)) {
+                logger.logSystemActivity("Could not move unreadable data file aside, leaving it untouched");
+                return;
+            }
+            if (wal != null) {
                 try {
-                    fis.close();
+                    Files.copy(Paths.get(WAL_FILE), Paths.get(WAL_FILE + suffix), StandardCopyOption.REPLACE_EXISTING);
                 } catch (IOException e) {
-                    logger.logSystemActivity("Error closing file input stream: " + e.getMessage());
+                    logger.logSystemActivity("Could not copy write-ahead log aside: " + e.getMessage());
                 }
             }
+            logger.logSystemActivity("Unreadable data file moved to " + quarantined.getName());
+        }
+        
+        if (!loaded && users.isEmpty() && getHives().isEmpty() && tasks.isEmpty() && reports.isEmpty()) {
+            initializeSampleData();
+            logger.logSystemActivity("Initialized with sample data");
         }
     }
     
     private void initializeSampleData() {
         User admin = new User(1, "Admin User", "admin@example.com", "admin123", User.Role.ADMIN);
-        users.put(admin.getId(), admin);
+        putUser(admin);
         
         User employee = new User(2, "Employee User", "employee@example.com", "emp123", User.Role.EMPLOYEE);
-        users.put(employee.getId(), employee);
+        putUser(employee);
         
         for (int i = 1; i <= 10; i++) {
             Hive hive = new Hive(i, true, false, false, 75.0);
-            hives.put(hive.getId(), hive);
+            putHive(hive);
         }
         
         for (int i = 1; i <= 5; i++) {
@@ -174,7 +897,6 @@ public class DataManager {
                 java.time.LocalDate.now(),
                 java.time.LocalDate.now().plusDays(7)
             );
-            tasks.put(task.getId(), task);
             
             // Assign odd-numbered tasks to admin, even-numbered tasks to employee
             if (i % 2 == 1) {
@@ -182,6 +904,7 @@ public class DataManager {
             } else {
                 employee.assignTask(task);
             }
+            putTask(task);
         }
         
         saveDataToFile();
@@ -189,273 +912,322 @@ public class DataManager {
     }
     
     public void reloadDataFromFile() {
-        lock.writeLock().lock();
+        long start = System.nanoTime();
+        lockWrite();
         try {
             File file = new File(DATA_FILE);
             if (!file.exists()) {
                 return;
             }
             
-            hives.clear();
-            tasks.clear();
-            users.clear();
-            reports.clear();
-            
-            FileInputStream fis = null;
-            FileChannel channel = null;
-            FileLock fileLock = null;
-            
             try {
-                fis = new FileInputStream(DATA_FILE);
-                channel = fis.getChannel();
-                fileLock = channel.tryLock(0, Long.MAX_VALUE, true);
-                
-                if (fileLock != null) {
-                    try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-                        List<Hive> loadedHives = (List<Hive>) ois.readObject();
-                        List<Task> loadedTasks = (List<Task>) ois.readObject();
-                        List<User> loadedUsers = (List<User>) ois.readObject();
-                        List<Report> loadedReports = (List<Report>) ois.readObject();
-                        
-                        // Use parallel streams to process the data
-                        loadedHives.parallelStream().forEach(hive -> hives.put(hive.getId(), hive));
-                        loadedTasks.parallelStream().forEach(task -> tasks.put(task.getId(), task));
-                        loadedUsers.parallelStream().forEach(user -> users.put(user.getId(), user));
-                        loadedReports.parallelStream().forEach(report -> reports.put(report.getId(), report));
-                        
-                        logger.logSystemActivity("Data reloaded from file - Users: " + users.size() + 
-                                               ", Hives: " + hives.size() + ", Tasks: " + tasks.size() + 
-                                               ", Reports: " + reports.size());
-                    }
-                } else {
-                    logger.logSystemActivity("Could not acquire file lock for reading during reload");
+                lockStorage(true);
+                if (refreshFromStorage()) {
+                    reloadEntities.record((long) users.size() + getHives().size() + tasks.size() + reports.size());
+                    logSystemActivity("Data reloaded from file - Users: " + users.size() +
+                                           ", Hives: " + getHives().size() + ", Tasks: " + tasks.size() +
+                                           ", Reports: " + reports.size());
                 }
             } catch (IOException | ClassNotFoundException e) {
-                logger.logSystemActivity("Error reloading data from file: " + e.getMessage());
+                reportStorageError("Error reloading data from file", e);
             } finally {
-                if (fileLock != null) {
-                    try {
-                        fileLock.release();
-                    } catch (IOException e) {
-                        logger.logSystemActivity("Error releasing file lock: " + e.getMessage());
-                    }
-                }
-                if (channel != null) {
-                    try {
-                        channel.close();
-                    } catch (IOException e) {
-                        logger.logSystemActivity("Error closing file channel: " + e.getMessage());
-                    }
-                }
-                if (fis != null) {
-                    try {
-                        fis.close();
-                    } catch (IOException e) {
-                        logger.logSystemActivity("Error closing file input stream: " + e.getMessage());
-                    }
-                }
+                unlockStorage();
             }
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
+            reloadTimer.recordSince(start);
         }
     }
 
     
+    // Getters return the current immutable map without locking or copying; later changes do not show up in it
     public Map<Integer, Hive> getHives() {
-        lock.readLock().lock();
-        try {
-            return new HashMap<>(hives);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return COLUMNAR_HIVES ? hiveAggregates.getColumns() : hives;
     }
     
     public Map<Integer, Task> getTasks() {
-        lock.readLock().lock();
-        try {
-            return new HashMap<>(tasks);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return tasks;
     }
     
     public Map<Integer, User> getUsers() {
-        lock.readLock().lock();
-        try {
-            return new HashMap<>(users);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return users;
     }
     
     public Hive getHive(int id) {
-        lock.readLock().lock();
-        try {
-            return hives.get(id);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return COLUMNAR_HIVES ? hiveAggregates.getColumns().get(id) : hives.get(id);
     }
     
     public Task getTask(int id) {
-        lock.readLock().lock();
-        try {
-            return tasks.get(id);
-        } finally {
-            lock.readLock().unlock();
+        return tasks.get(id);
+    }
+    
+    // Task queries are answered from the indexes; results are in ascending ID order
+    public List<Task> getTasksForHive(int hiveId) {
+        return new ArrayList<>(taskIndex.forHive(hiveId));
+    }
+    
+    public List<Task> getTasksAssignedTo(int userId) {
+        return new ArrayList<>(taskIndex.assignedTo(userId));
+    }
+    
+    public List<Task> getTasksByStatus(Task.Status status) {
+        return new ArrayList<>(taskIndex.withStatus(status));
+    }
+    
+    public List<Task> getTasksByType(Task.Type type) {
+        return new ArrayList<>(taskIndex.ofType(type));
+    }
+    
+    // Live fleet totals, maintained on every write; none of these scan
+    public HiveAggregates getHiveAggregates() {
+        return hiveAggregates;
+    }
+    
+    // Answered from the bitmap indexes in the hive columns; results are in ascending ID order
+    public List<Hive> findHives(HiveFilter filter) {
+        HiveColumns columns = hiveAggregates.getColumns();
+        List<Hive> result = new ArrayList<>();
+        if (COLUMNAR_HIVES) {
+            columns.forEachMatch(filter, id -> result.add(columns.get(id)));
+        } else {
+            PersistentIntMap<Hive> current = hives;
+            columns.forEachMatch(filter, id -> {
+                Hive hive = current.get(id);
+                if (hive != null) {
+                    result.add(hive);
+                }
+            });
         }
+        return result;
+    }
+    
+    public int countHives(HiveFilter filter) {
+        return hiveAggregates.getColumns().count(filter);
+    }
+    
+    public int countTasks(Task.Status status) {
+        return taskIndex.countWithStatus(status);
+    }
+    
+    public int countTasks(Task.Type type) {
+        return taskIndex.countOfType(type);
+    }
+    
+    public int countTasksAssignedTo(int userId) {
+        return taskIndex.countAssignedTo(userId);
+    }
+    
+    // Null criteria match any value
+    public List<Task> findTasks(Integer hiveId, Integer assignedUserId, Task.Status status, Task.Type type) {
+        return taskIndex.find(hiveId, assignedUserId, status, type);
     }
     
     public User getUser(int id) {
-        lock.readLock().lock();
+        return users.get(id);
+    }
+    
+    // Emails are matched case-insensitively through the index
+    public User getUserByEmail(String email) {
+        long start = System.nanoTime();
         try {
-            return users.get(id);
+            return findUserByEmail(email);
         } finally {
-            lock.readLock().unlock();
+            emailLookupTimer.recordSince(start);
         }
     }
     
-    public User getUserByEmail(String email) {
-        lock.readLock().lock();
-        try {
-            for (User user : users.values()) {
-                if (user.getEmail().equals(email)) {
-                    return user;
-                }
-            }
+    private User findUserByEmail(String email) {
+        String key = normalizeEmail(email);
+        if (key == null) {
             return null;
-        } finally {
-            lock.readLock().unlock();
         }
+        Integer id = emailIndex.get(key);
+        User user = id != null ? users.get(id.intValue()) : null;
+        
+        // A reader can see the index a moment before or after the users map, so confirm the match
+        if (user != null && key.equals(normalizeEmail(user.getEmail()))) {
+            return user;
+        }
+        return null;
     }
     
-    public void addHive(Hive hive) {
-        lock.writeLock().lock();
+    // The write methods return false when the change could not be stored. The data is then reloaded from
+    // storage, which also undoes any change the caller made to the objects it passed in.
+    public boolean addHive(Hive hive) {
+        lockWrite();
         try {
-            hives.put(hive.getId(), hive);
+            if (!commit(WriteAheadLog.ENTITY_HIVE, WriteAheadLog.OP_PUT, hive, () -> putHive(hive))) {
+                return false;
+            }
             logger.logSystemActivity("Hive added - ID: " + hive.getId());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void addTask(Task task) {
-        lock.writeLock().lock();
+    public boolean addTask(Task task) {
+        lockWrite();
         try {
-            tasks.put(task.getId(), task);
+            if (!commit(WriteAheadLog.ENTITY_TASK, WriteAheadLog.OP_PUT, task, () -> putTask(task))) {
+                return false;
+            }
             logger.logSystemActivity("Task added - ID: " + task.getId() + ", Description: " + task.getDescription());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void addUser(User user) {
-        lock.writeLock().lock();
+    public boolean addUser(User user) {
+        lockWrite();
         try {
-            users.put(user.getId(), user);
+            if (!commit(WriteAheadLog.ENTITY_USER, WriteAheadLog.OP_PUT, user, () -> putUser(user))) {
+                return false;
+            }
             logger.logSystemActivity("User added - ID: " + user.getId() + ", Name: " + user.getName());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void removeUser(int id) {
-        lock.writeLock().lock();
+    public boolean removeUser(int id) {
+        lockWrite();
         try {
-            users.remove(id);
+            if (!commit(WriteAheadLog.ENTITY_USER, WriteAheadLog.OP_REMOVE, id, () -> removeUserEntry(id))) {
+                return false;
+            }
             logger.logSystemActivity("User removed - ID: " + id);
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void updateHive(Hive hive) {
-        lock.writeLock().lock();
+    public boolean updateHive(Hive hive) {
+        lockWrite();
         try {
-            hives.put(hive.getId(), hive);
+            if (!commit(WriteAheadLog.ENTITY_HIVE, WriteAheadLog.OP_PUT, hive, () -> putHive(hive))) {
+                return false;
+            }
             logger.logSystemActivity("Hive updated - ID: " + hive.getId());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void updateTask(Task task) {
-        lock.writeLock().lock();
+    public boolean updateTask(Task task) {
+        lockWrite();
         try {
-            tasks.put(task.getId(), task);
+            if (!commit(WriteAheadLog.ENTITY_TASK, WriteAheadLog.OP_PUT, task, () -> putTask(task))) {
+                return false;
+            }
             logger.logSystemActivity("Task updated - ID: " + task.getId());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void updateUser(User user) {
-        lock.writeLock().lock();
+    public boolean updateUser(User user) {
+        lockWrite();
         try {
-            users.put(user.getId(), user);
+            if (!commit(WriteAheadLog.ENTITY_USER, WriteAheadLog.OP_PUT, user, () -> putUser(user))) {
+                return false;
+            }
             logger.logSystemActivity("User updated - ID: " + user.getId());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
     public Map<Integer, Report> getReports() {
-        lock.readLock().lock();
-        try {
-            return new HashMap<>(reports);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return reports;
     }
     
-    public void addReport(Report report) {
-        lock.writeLock().lock();
+    public boolean addReport(Report report) {
+        lockWrite();
         try {
-            reports.put(report.getId(), report);
+            if (!commit(WriteAheadLog.ENTITY_REPORT, WriteAheadLog.OP_PUT, report, () -> reports = reports.plus(report.getId(), report))) {
+                return false;
+            }
             logger.logSystemActivity("Report added - ID: " + report.getId() + ", User: " + report.getUserName());
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
-    public void removeReport(int id) {
-        lock.writeLock().lock();
+    public boolean removeReport(int id) {
+        lockWrite();
         try {
-            reports.remove(id);
+            if (!commit(WriteAheadLog.ENTITY_REPORT, WriteAheadLog.OP_REMOVE, id, () -> reports = reports.minus(id))) {
+                return false;
+            }
             logger.logSystemActivity("Report removed - ID: " + id);
-            saveDataToFile();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            unlockWrite();
         }
     }
     
     public Report getReport(int id) {
-        lock.readLock().lock();
-        try {
-            return reports.get(id);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return reports.get(id);
     }
     
     public int getNextReportId() {
-        lock.readLock().lock();
-        try {
-            if (reports.isEmpty()) {
-                return 1;
+        return allocateIds(WriteAheadLog.ENTITY_REPORT, 1);
+    }
+    
+    public int getNextUserId() {
+        return allocateIds(WriteAheadLog.ENTITY_USER, 1);
+    }
+    
+    public int getNextTaskId() {
+        return allocateIds(WriteAheadLog.ENTITY_TASK, 1);
+    }
+    
+    // Reserves count consecutive task IDs for a bulk insert and returns the first one
+    public int allocateTaskIds(int count) {
+        return allocateIds(WriteAheadLog.ENTITY_TASK, count);
+    }
+    
+    private int allocateIds(byte entity, int count) {
+        if (idSequences != null) {
+            try {
+                return idSequences.allocate(entity, count, () -> nextUnusedId(entity));
+            } catch (IOException e) {
+                reportStorageError("Error allocating IDs from sequence file", e);
             }
-            return reports.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
-        } finally {
-            lock.readLock().unlock();
         }
+        return nextUnusedId(entity);
     }
     
+    // One past the highest ID in memory; the maps are ordered by ID, so this only walks one path
+    private int nextUnusedId(byte entity) {
+        PersistentIntMap<?> current;
+        switch (entity) {
+            case WriteAheadLog.ENTITY_TASK:
+                current = tasks;
+                break;
+            case WriteAheadLog.ENTITY_USER:
+                current = users;
+                break;
+            case WriteAheadLog.ENTITY_REPORT:
+                current = reports;
+                break;
+            default:
+                if (COLUMNAR_HIVES) {
+                    HiveColumns columns = hiveAggregates.getColumns();
+                    return columns.isEmpty() ? 1 : columns.lastKey() + 1;
+                }
+                current = hives;
+                break;
+        }
+        return current.isEmpty() ? 1 : current.lastKey() + 1;
+    }
+
 }
@@ -0,0 +1,23 @@
+import java.util.List;
+
+public class DataSnapshot {
+    private final long generation;
+    private final List<Hive> hives;
+    private final List<Task> tasks;
+    private final List<User> users;
+    private final List<Report> reports;
+    
+    public DataSnapshot(long generation, List<Hive> hives, List<Task> tasks, List<User> users, List<Report> reports) {
+        this.generation = generation;
+        this.hives = hives;
+        this.tasks = tasks;
+        this.users = users;
+        this.reports = reports;
+    }
+    
+    public long getGeneration() { return generation; }
+    public List<Hive> getHives() { return hives; }
+    public List<Task> getTasks() { return tasks; }
+    public List<User> getUsers() { return users; }
+    public List<Report> getReports() { return reports; }
+}
@@ -0,0 +1,308 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+// Writes a large production-shaped dataset straight to segment files, for reproducing scaling limits:
+//   java -cp src DatasetGenerator --users 500 --hives 100000 --tasks 1000000 --reports 200000
+// Tasks are mostly assigned to a few busy employees, statuses and types are mixed, report lengths have
+// a long tail and reports mention a varying number of hives. Entities are generated in parallel, each
+// from a random generator seeded by its ID, so the same seed always gives the same data.
+public class DatasetGenerator {
+    private static final String DATA_FILE = "beekeeping_data.dat";
+    private static final long HIVE_STREAM = 0x48495645L;
+    private static final long TASK_STREAM = 0x5441534BL;
+    private static final long REPORT_STREAM = 0x5245504FL;
+    private static final int EMPLOYEES_PER_ADMIN = 50;
+    private static final String[] WORDS = {
+        "hive", "brood", "queen", "frame", "honey", "super", "varroa", "mites", "feeding", "syrup",
+        "comb", "drones", "workers", "swarm", "inspection", "pollen", "entrance", "weather", "colony", "cells"
+    };
+    
+    private final long seed;
+    private final int userCount;
+    private final int hiveCount;
+    private final int taskCount;
+    private final int reportCount;
+    private final LocalDate today = LocalDate.now();
+    
+    // Cumulative Zipf weights over employees, so a few of them get most of the tasks and reports
+    private final double[] employeeWeights;
+    private final int firstEmployeeId;
+    
+    public DatasetGenerator(int userCount, int hiveCount, int taskCount, int reportCount, long seed) {
+        this.userCount = Math.max(2, userCount);
+        this.hiveCount = Math.max(1, hiveCount);
+        this.taskCount = Math.max(0, taskCount);
+        this.reportCount = Math.max(0, reportCount);
+        this.seed = seed;
+        
+        int adminCount = Math.max(1, this.userCount / (EMPLOYEES_PER_ADMIN + 1));
+        this.firstEmployeeId = adminCount + 1;
+        int employeeCount = this.userCount - adminCount;
+        this.employeeWeights = new double[employeeCount];
+        double total = 0;
+        for (int i = 0; i < employeeCount; i++) {
+            total += 1.0 / Math.pow(i + 1, 1.1);
+            employeeWeights[i] = total;
+        }
+        for (int i = 0; i < employeeCount; i++) {
+            employeeWeights[i] /= total;
+        }
+    }
+    
+    // Replaces the data files in the working directory with a generated dataset
+    public void write() throws IOException {
+        deleteDataFiles();
+        
+        Hive[] hives = new Hive[hiveCount];
+        Task[] tasks = new Task[taskCount];
+        Report[] reports = new Report[reportCount];
+        IntStream.range(0, hiveCount).parallel().forEach(i -> hives[i] = hive(i + 1));
+        IntStream.range(0, taskCount).parallel().forEach(i -> tasks[i] = task(i + 1));
+        IntStream.range(0, reportCount).parallel().forEach(i -> reports[i] = report(i + 1));
+        List<User> users = users();
+        
+        SegmentedStore store = new SegmentedStore(DATA_FILE);
+        long[] generations = SegmentedStore.emptySegmentGenerations();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        writes.add(writeSegment(store, WriteAheadLog.ENTITY_HIVE, Arrays.asList(hives)));
+        writes.add(writeSegment(store, WriteAheadLog.ENTITY_TASK, Arrays.asList(tasks)));
+        writes.add(writeSegment(store, WriteAheadLog.ENTITY_USER, users));
+        writes.add(writeSegment(store, WriteAheadLog.ENTITY_REPORT, Arrays.asList(reports)));
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        for (byte entity : SegmentedStore.ENTITIES) {
+            generations[entity] = 1;
+        }
+        store.publishManifest(new SegmentedStore.Manifest(1, generations), true);
+    }
+    
+    private static CompletableFuture<Void> writeSegment(SegmentedStore store, byte entity, List<?> values) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                store.writeSegment(entity, 1, values, true);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+    
+    // The first admin and employee keep the sample logins, so the generated data can be tried out right away
+    private List<User> users() {
+        List<User> users = new ArrayList<>(userCount);
+        for (int id = 1; id < firstEmployeeId; id++) {
+            users.add(id == 1
+                ? new User(1, "Admin User", "admin@example.com", "admin123", User.Role.ADMIN)
+                : new User(id, "Admin " + id, "admin" + id + "@example.com", "admin123", User.Role.ADMIN));
+        }
+        for (int id = firstEmployeeId; id <= userCount; id++) {
+            users.add(id == firstEmployeeId
+                ? new User(id, "Employee User", "employee@example.com", "emp123", User.Role.EMPLOYEE)
+                : new User(id, "Employee " + id, "employee" + id + "@example.com", "emp123", User.Role.EMPLOYEE));
+        }
+        return users;
+    }
+    
+    // Mostly healthy hives; honey levels cluster around the middle
+    private Hive hive(int id) {
+        SplittableRandom random = random(HIVE_STREAM, id);
+        boolean queenless = random.nextDouble() < 0.03;
+        boolean healthy = !queenless && random.nextDouble() < 0.85;
+        boolean needsAttention = queenless || !healthy || random.nextDouble() < 0.05;
+        double honeyLevel = Math.round(clamp(45 + gaussian(random) * 20, 0, 100) * 10) / 10.0;
+        return new Hive(id, healthy, needsAttention, queenless, honeyLevel);
+    }
+    
+    // Roughly half completed, a third pending and the rest overdue; one in seven is not assigned
+    private Task task(int id) {
+        SplittableRandom random = random(TASK_STREAM, id);
+        double typeRoll = random.nextDouble();
+        Task.Type type = typeRoll < 0.5 ? Task.Type.INSPECT_HIVE
+                       : typeRoll < 0.8 ? Task.Type.FEED_HIVE
+                       : typeRoll < 0.85 ? Task.Type.ACQUIRE_QUEEN
+                       : Task.Type.OTHER;
+        int hiveId = 1 + random.nextInt(hiveCount);
+        
+        double statusRoll = random.nextDouble();
+        Task.Status status = statusRoll < 0.55 ? Task.Status.COMPLETED
+                           : statusRoll < 0.9 ? Task.Status.PENDING
+                           : Task.Status.OVERDUE;
+        LocalDate dueDate;
+        if (status == Task.Status.PENDING) {
+            dueDate = today.plusDays(random.nextInt(30));
+        } else if (status == Task.Status.OVERDUE) {
+            dueDate = today.minusDays(1 + random.nextInt(60));
+        } else {
+            dueDate = today.minusDays(random.nextInt(365)).plusDays(random.nextInt(30));
+        }
+        LocalDate createdDate = dueDate.minusDays(1 + random.nextInt(30));
+        
+        Task task = new Task(id, description(random, type), type, hiveId, createdDate, dueDate);
+        task.setStatus(status);
+        if (random.nextDouble() >= 1.0 / 7) {
+            task.setAssignedUserId(employee(random));
+        }
+        return task;
+    }
+    
+    // Content length is log-normal around 200 characters; most reports mention one to three hives
+    private Report report(int id) {
+        SplittableRandom random = random(REPORT_STREAM, id);
+        int userId = employee(random);
+        int length = (int) clamp(Math.exp(Math.log(200) + gaussian(random) * 0.9), 10, 5000);
+        
+        IntList relatedHives = new IntList();
+        int hiveFanOut = Math.min(hiveCount, Math.min(20, geometric(random, 0.45)));
+        while (relatedHives.size() < hiveFanOut) {
+            int hiveId = 1 + random.nextInt(hiveCount);
+            if (!relatedHives.contains(hiveId)) {
+                relatedHives.add(hiveId);
+            }
+        }
+        IntList relatedTasks = new IntList();
+        int taskFanOut = taskCount > 0 ? Math.min(taskCount, Math.min(10, geometric(random, 0.6) - 1)) : 0;
+        while (relatedTasks.size() < taskFanOut) {
+            int taskId = 1 + random.nextInt(taskCount);
+            if (!relatedTasks.contains(taskId)) {
+                relatedTasks.add(taskId);
+            }
+        }
+        
+        Report report = new Report(id, userId, "Employee " + userId, text(random, length), relatedHives, relatedTasks);
+        LocalDateTime created = today.atStartOfDay().minusDays(random.nextInt(365)).plusSeconds(random.nextInt(86400));
+        report.setTimestamp(created.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return report;
+    }
+    
+    private int employee(SplittableRandom random) {
+        int index = Arrays.binarySearch(employeeWeights, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return firstEmployeeId + Math.min(index, employeeWeights.length - 1);
+    }
+    
+    private static String description(SplittableRandom random, Task.Type type) {
+        switch (type) {
+            case INSPECT_HIVE:
+                return "Inspect " + WORDS[random.nextInt(WORDS.length)] + " and " + WORDS[random.nextInt(WORDS.length)];
+            case FEED_HIVE:
+                return "Feed " + (1 + random.nextInt(5)) + " l of syrup";
+            case ACQUIRE_QUEEN:
+                return "Acquire a new queen";
+            default:
+                return "Check " + WORDS[random.nextInt(WORDS.length)];
+        }
+    }
+    
+    private static String text(SplittableRandom random, int length) {
+        StringBuilder text = new StringBuilder(length + 12);
+        while (text.length() < length) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+    
+    // Number of trials up to and including the first success, at least 1
+    private static int geometric(SplittableRandom random, double probability) {
+        return 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - probability));
+    }
+    
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+    
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    private SplittableRandom random(long stream, int id) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + stream * 0xBF58476D1CE4E5B9L + id);
+    }
+    
+    // Also removes the write-ahead log and ID sequences, which belong to the data being replaced
+    private static void deleteDataFiles() throws IOException {
+        File[] files = new File(".").listFiles((dir, name) -> name.startsWith("beekeeping_data."));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete() && file.exists()) {
+                    throw new IOException("Could not delete " + file.getName());
+                }
+            }
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int users = 200;
+        int hives = 10_000;
+        int tasks = 100_000;
+        int reports = 20_000;
+        long seed = 1;
+        boolean force = false;
+        
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--force")) {
+                force = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage();
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--users":
+                    users = Integer.parseInt(value);
+                    break;
+                case "--hives":
+                    hives = Integer.parseInt(value);
+                    break;
+                case "--tasks":
+                    tasks = Integer.parseInt(value);
+                    break;
+                case "--reports":
+                    reports = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+        
+        if (new File(DATA_FILE).exists() && !force) {
+            System.out.println(DATA_FILE + " already exists. Use --force to replace it.");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        new DatasetGenerator(users, hives, tasks, reports, seed).write();
+        System.out.printf("Generated %d users, %d hives, %d tasks and %d reports in %.1f s%n",
+                          Math.max(2, users), Math.max(1, hives), tasks, reports, (System.nanoTime() - start) / 1e9);
+    }
+    
+    private static void usage() {
+        System.out.println("Usage: java -cp src DatasetGenerator [--users N] [--hives N] [--tasks N] [--reports N] [--seed N] [--force]");
+    }
+}
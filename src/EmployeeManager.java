@@ -1,9 +1,9 @@
 import java.util.Scanner;
 import java.util.Map;
 import java.util.List;
-import java.util.ArrayList;
 
 public class EmployeeManager {
+    private static final String SAVE_FAILED = "Could not save the change, please try again.";
     private DataManager dataManager;
     private Scanner scanner;
     private User employeeUser;
@@ -65,7 +65,7 @@ public class EmployeeManager {
         refreshEmployeeData();
         
         System.out.println("\n=== My Tasks ===");
-        List<Task> tasks = employeeUser.getAssignedTasks();
+        List<Task> tasks = dataManager.getTasksAssignedTo(employeeUser.getId());
         if (tasks.isEmpty()) {
             System.out.println("You have no assigned tasks.");
             logger.logActivity(employeeUser.getId(), employeeUser.getName(), "Viewed own tasks - No assigned tasks");
@@ -91,7 +91,7 @@ public class EmployeeManager {
         
         System.out.println("\n=== Complete Task ===");
         
-        List<Task> tasks = employeeUser.getAssignedTasks();
+        List<Task> tasks = dataManager.getTasksAssignedTo(employeeUser.getId());
         if (tasks.isEmpty()) {
             System.out.println("You have no assigned tasks to complete.");
             logger.logActivity(employeeUser.getId(), employeeUser.getName(), "Attempted to complete task - No assigned tasks");
@@ -111,7 +111,7 @@ public class EmployeeManager {
         String taskIdsInput = scanner.nextLine().trim();
         
         String[] taskIdStrings = taskIdsInput.split(",");
-        List<Integer> taskIds = new ArrayList<>();
+        IntList taskIds = new IntList();
         
         for (String taskIdStr : taskIdStrings) {
             try {
@@ -138,12 +138,17 @@ public class EmployeeManager {
         }
         
         int completedTasks = 0;
-        for (int taskId : taskIds) {
+        for (int i = 0; i < taskIds.size(); i++) {
+            int taskId = taskIds.getInt(i);
             Task taskToComplete = dataManager.getTask(taskId);
             if (taskToComplete != null) {
                 employeeUser.completeTask(taskToComplete);
-                dataManager.updateTask(taskToComplete);
-                dataManager.updateUser(employeeUser);
+                if (!dataManager.updateTask(taskToComplete) || !dataManager.updateUser(employeeUser)) {
+                    // The failed write reloaded the data, so pick up our user's restored task list
+                    refreshEmployeeData();
+                    System.out.println("Task " + taskId + ": " + SAVE_FAILED);
+                    continue;
+                }
                 completedTasks++;
                 System.out.println("Task " + taskId + " marked as completed.");
                 logger.logActivity(employeeUser.getId(), employeeUser.getName(), 
@@ -151,6 +156,8 @@ public class EmployeeManager {
             }
         }
         
+        // One write for the whole batch when write-behind is enabled
+        dataManager.flush();
         System.out.println("Completed " + completedTasks + " task(s).");
     }
     
@@ -174,7 +181,7 @@ public class EmployeeManager {
         String taskIdsInput = scanner.nextLine().trim();
         
         String[] hiveIdStrings = hiveIdsInput.split(",");
-        List<Integer> hiveIds = new ArrayList<>();
+        IntList hiveIds = new IntList();
         
         for (String hiveIdStr : hiveIdStrings) {
             try {
@@ -190,7 +197,7 @@ public class EmployeeManager {
         }
         
         String[] taskIdStrings = taskIdsInput.split(",");
-        List<Integer> taskIds = new ArrayList<>();
+        IntList taskIds = new IntList();
         
         for (String taskIdStr : taskIdStrings) {
             try {
@@ -208,7 +215,10 @@ public class EmployeeManager {
         // Create and save the report
         int reportId = dataManager.getNextReportId();
         Report report = new Report(reportId, employeeUser.getId(), employeeUser.getName(), content, hiveIds, taskIds);
-        dataManager.addReport(report);
+        if (!dataManager.addReport(report)) {
+            System.out.println(SAVE_FAILED);
+            return;
+        }
         
         System.out.println("Report submitted successfully!");
         System.out.println("Content: " + content);
@@ -254,7 +264,10 @@ public class EmployeeManager {
                 System.out.print("Is hive healthy? (y/n): ");
                 boolean isHealthy = scanner.nextLine().trim().toLowerCase().startsWith("y");
                 hive.setHealthy(isHealthy);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive health status updated successfully.");
                 logger.logActivity(employeeUser.getId(), employeeUser.getName(), 
                                   "Updated hive health - Hive ID: " + hiveId);
@@ -264,7 +277,10 @@ public class EmployeeManager {
                 System.out.print("Does hive need attention? (y/n): ");
                 boolean needsAttention = scanner.nextLine().trim().toLowerCase().startsWith("y");
                 hive.setNeedsAttention(needsAttention);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive attention status updated successfully.");
                 logger.logActivity(employeeUser.getId(), employeeUser.getName(), 
                                   "Updated hive attention status - Hive ID: " + hiveId);
@@ -274,7 +290,10 @@ public class EmployeeManager {
                 System.out.print("Is hive queenless? (y/n): ");
                 boolean isQueenless = scanner.nextLine().trim().toLowerCase().startsWith("y");
                 hive.setQueenless(isQueenless);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive queen status updated successfully.");
                 logger.logActivity(employeeUser.getId(), employeeUser.getName(), 
                                   "Updated hive queen status - Hive ID: " + hiveId);
@@ -284,7 +303,10 @@ public class EmployeeManager {
                 System.out.print("Enter new honey level (0-100): ");
                 double honeyLevel = getDoubleInput("");
                 hive.setHoneyLevel(honeyLevel);
-                dataManager.updateHive(hive);
+                if (!dataManager.updateHive(hive)) {
+                    System.out.println(SAVE_FAILED);
+                    break;
+                }
                 System.out.println("Hive honey level updated successfully.");
                 logger.logActivity(employeeUser.getId(), employeeUser.getName(), 
                                   "Updated hive honey level - Hive ID: " + hiveId);
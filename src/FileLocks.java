@@ -0,0 +1,39 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+// Exclusive file locks that are polled for instead of waited for in the kernel. POSIX locks belong to
+// the whole process, so when one thread holds the data lock while another waits for the log lock,
+// and a second session holds them the other way round, Linux sees a cycle and fails the waiting call
+// with EDEADLK even though both sessions would have made progress. The data lock is the only lock any
+// session waits for in the kernel; the short-lived locks on the log, spill and sequence files go
+// through here, so no cycle can form.
+public final class FileLocks {
+    private static final int SPINS = 16;
+    private static final long MAX_BACKOFF_MS = 8;
+    
+    private FileLocks() {
+    }
+    
+    public static FileLock lock(FileChannel channel) throws IOException {
+        long backoff = 1;
+        for (int attempt = 0; ; attempt++) {
+            FileLock fileLock = channel.tryLock();
+            if (fileLock != null) {
+                return fileLock;
+            }
+            if (attempt < SPINS) {
+                Thread.yield();
+                continue;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a file lock");
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+}
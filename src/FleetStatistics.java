@@ -0,0 +1,336 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Statistics over the whole fleet, computed with fork/join: the hives or tasks are split into chunks,
+// every chunk is summarised on its own core and the partial results are merged pairwise on the way up.
+public class FleetStatistics {
+    // Chunks small enough to keep all cores busy, large enough that splitting costs nothing
+    private static final int MIN_CHUNK_SIZE = 4096;
+    private static final int CHUNKS_PER_THREAD = 8;
+    
+    // Honey levels are percentages; percentiles are kept to a tenth of a percent
+    private static final int HONEY_BUCKETS = 1001;
+    
+    public static class HiveStatistics {
+        private long count;
+        private long healthy;
+        private long needsAttention;
+        private long queenless;
+        private double honeyMin = Double.POSITIVE_INFINITY;
+        private double honeyMax = Double.NEGATIVE_INFINITY;
+        private double honeyMean;
+        private double honeySquaredDeviations;
+        private final long[] honeyHistogram = new long[HONEY_BUCKETS];
+        
+        private void add(Hive hive) {
+            count++;
+            if (hive.isHealthy()) {
+                healthy++;
+            }
+            if (hive.isNeedsAttention()) {
+                needsAttention++;
+            }
+            if (hive.isQueenless()) {
+                queenless++;
+            }
+            double honey = hive.getHoneyLevel();
+            honeyMin = Math.min(honeyMin, honey);
+            honeyMax = Math.max(honeyMax, honey);
+            // Welford's update keeps the variance accurate without a second pass
+            double delta = honey - honeyMean;
+            honeyMean += delta / count;
+            honeySquaredDeviations += delta * (honey - honeyMean);
+            honeyHistogram[honeyBucket(honey)]++;
+        }
+        
+        // Reads the columns of one chunk a word of flags and a run of honey levels at a time
+        private void add(HiveColumns.Chunk chunk) {
+            if (chunk.count == 0) {
+                return;
+            }
+            double sum = 0;
+            for (int word = 0; word < HiveColumns.WORDS; word++) {
+                healthy += Long.bitCount(chunk.healthy[word]);
+                needsAttention += Long.bitCount(chunk.needsAttention[word]);
+                queenless += Long.bitCount(chunk.queenless[word]);
+                for (long bits = chunk.present[word]; bits != 0; bits &= bits - 1) {
+                    double honey = chunk.honeyLevels[word * 64 + Long.numberOfTrailingZeros(bits)];
+                    sum += honey;
+                    honeyMin = Math.min(honeyMin, honey);
+                    honeyMax = Math.max(honeyMax, honey);
+                    honeyHistogram[honeyBucket(honey)]++;
+                }
+            }
+            // Second pass over the chunk, still in cache, for the squared deviations from its own mean
+            double mean = sum / chunk.count;
+            double squaredDeviations = 0;
+            for (int word = 0; word < HiveColumns.WORDS; word++) {
+                for (long bits = chunk.present[word]; bits != 0; bits &= bits - 1) {
+                    double deviation = chunk.honeyLevels[word * 64 + Long.numberOfTrailingZeros(bits)] - mean;
+                    squaredDeviations += deviation * deviation;
+                }
+            }
+            addMoments(chunk.count, mean, squaredDeviations);
+        }
+        
+        // Chan's formula for combining the mean and squared deviations of two groups
+        private void addMoments(long otherCount, double otherMean, double otherSquaredDeviations) {
+            long total = count + otherCount;
+            double delta = otherMean - honeyMean;
+            honeySquaredDeviations += otherSquaredDeviations + delta * delta * count * otherCount / total;
+            honeyMean += delta * otherCount / total;
+            count = total;
+        }
+        
+        private HiveStatistics merge(HiveStatistics other) {
+            if (other.count == 0) {
+                return this;
+            }
+            addMoments(other.count, other.honeyMean, other.honeySquaredDeviations);
+            healthy += other.healthy;
+            needsAttention += other.needsAttention;
+            queenless += other.queenless;
+            honeyMin = Math.min(honeyMin, other.honeyMin);
+            honeyMax = Math.max(honeyMax, other.honeyMax);
+            for (int i = 0; i < HONEY_BUCKETS; i++) {
+                honeyHistogram[i] += other.honeyHistogram[i];
+            }
+            return this;
+        }
+        
+        public long getCount() { return count; }
+        public long getHealthy() { return healthy; }
+        public long getNeedsAttention() { return needsAttention; }
+        public long getQueenless() { return queenless; }
+        public double getHoneyMin() { return count > 0 ? honeyMin : 0; }
+        public double getHoneyMax() { return count > 0 ? honeyMax : 0; }
+        public double getHoneyMean() { return honeyMean; }
+        public double getHoneyStdDev() { return count > 0 ? Math.sqrt(honeySquaredDeviations / count) : 0; }
+        
+        // Nearest-rank percentile, fraction between 0 and 1
+        public double getHoneyPercentile(double fraction) {
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < HONEY_BUCKETS; i++) {
+                seen += honeyHistogram[i];
+                if (seen >= rank) {
+                    return Math.min(Math.max(i / 10.0, getHoneyMin()), getHoneyMax());
+                }
+            }
+            return getHoneyMax();
+        }
+    }
+    
+    public static class TaskStatistics {
+        private long count;
+        private long overdue;
+        // One extra slot at the end for tasks without a status or type, as in TaskIndex
+        private final long[] byStatus = new long[Task.Status.values().length + 1];
+        private final long[] byType = new long[Task.Type.values().length + 1];
+        // Assigned and overdue tasks per user ID
+        private final IntObjectMap<long[]> perUser = new IntObjectMap<>();
+        
+        private void add(Task task, LocalDate today) {
+            count++;
+            byStatus[slot(task.getStatus(), byStatus)]++;
+            byType[slot(task.getType(), byType)]++;
+            boolean late = isOverdue(task, today);
+            if (late) {
+                overdue++;
+            }
+            if (task.isAssigned()) {
+                long[] load = load(task.getAssignedUserId());
+                load[0]++;
+                if (late) {
+                    load[1]++;
+                }
+            }
+        }
+        
+        private TaskStatistics merge(TaskStatistics other) {
+            count += other.count;
+            overdue += other.overdue;
+            for (int i = 0; i < byStatus.length; i++) {
+                byStatus[i] += other.byStatus[i];
+            }
+            for (int i = 0; i < byType.length; i++) {
+                byType[i] += other.byType[i];
+            }
+            other.perUser.forEach((otherLoad, userId) -> {
+                long[] load = load(userId);
+                load[0] += otherLoad[0];
+                load[1] += otherLoad[1];
+            });
+            return this;
+        }
+        
+        private static int slot(Enum<?> value, long[] counts) {
+            return value != null ? value.ordinal() : counts.length - 1;
+        }
+        
+        private long[] load(int userId) {
+            long[] load = perUser.get(userId);
+            if (load == null) {
+                load = new long[2];
+                perUser.put(userId, load);
+            }
+            return load;
+        }
+        
+        public long getCount() { return count; }
+        // A null status or type counts the tasks that have none
+        public long getCount(Task.Status status) { return byStatus[slot(status, byStatus)]; }
+        public long getCount(Task.Type type) { return byType[slot(type, byType)]; }
+        public long getOverdue() { return overdue; }
+        public double getOverdueRatio() { return count > 0 ? (double) overdue / count : 0; }
+        public long getAssignedTo(int userId) { long[] load = perUser.get(userId); return load != null ? load[0] : 0; }
+        public long getOverdueFor(int userId) { long[] load = perUser.get(userId); return load != null ? load[1] : 0; }
+        
+        // User IDs with assigned tasks, busiest first
+        public List<Integer> getUsersByLoad() {
+            List<Integer> userIds = new ArrayList<>(perUser.size());
+            perUser.forEach((load, userId) -> userIds.add(userId));
+            userIds.sort((a, b) -> Long.compare(perUser.get(b)[0], perUser.get(a)[0]));
+            return userIds;
+        }
+    }
+    
+    // A task counts as overdue when it is marked so or its due date passed before it was completed
+    static boolean isOverdue(Task task, LocalDate today) {
+        if (task.getStatus() == Task.Status.COMPLETED) {
+            return false;
+        }
+        return task.getStatus() == Task.Status.OVERDUE || (task.getDueDate() != null && today.isAfter(task.getDueDate()));
+    }
+    
+    private static int honeyBucket(double honey) {
+        int bucket = (int) Math.round(honey * 10);
+        return Math.min(Math.max(bucket, 0), HONEY_BUCKETS - 1);
+    }
+    
+    // Columnar hives are scanned column by column, other maps hive by hive
+    public static HiveStatistics ofHives(Map<Integer, Hive> hives) {
+        if (hives instanceof HiveColumns) {
+            HiveColumns.Chunk[] chunks = ((HiveColumns) hives).chunks().toArray(new HiveColumns.Chunk[0]);
+            int chunksPerTask = Math.max(1, chunkSize(hives.size()) / HiveColumns.CHUNK_SIZE);
+            return ForkJoinPool.commonPool().invoke(new ColumnChunk(chunks, 0, chunks.length, chunksPerTask));
+        }
+        return ofHives(hives.values());
+    }
+    
+    public static HiveStatistics ofHives(Collection<Hive> hives) {
+        Hive[] array = hives.toArray(new Hive[0]);
+        return ForkJoinPool.commonPool().invoke(new HiveChunk(array, 0, array.length, chunkSize(array.length)));
+    }
+    
+    public static TaskStatistics ofTasks(Collection<Task> tasks) {
+        Task[] array = tasks.toArray(new Task[0]);
+        return ForkJoinPool.commonPool().invoke(new TaskChunk(array, 0, array.length, chunkSize(array.length),
+                                                              LocalDate.now()));
+    }
+    
+    private static int chunkSize(int size) {
+        int chunks = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+        return Math.max(MIN_CHUNK_SIZE, size / chunks + 1);
+    }
+    
+    private static class HiveChunk extends RecursiveTask<HiveStatistics> {
+        private static final long serialVersionUID = 1L;
+        
+        private final Hive[] hives;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        
+        HiveChunk(Hive[] hives, int from, int to, int chunkSize) {
+            this.hives = hives;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+        
+        @Override
+        protected HiveStatistics compute() {
+            if (to - from <= chunkSize) {
+                HiveStatistics statistics = new HiveStatistics();
+                for (int i = from; i < to; i++) {
+                    statistics.add(hives[i]);
+                }
+                return statistics;
+            }
+            int middle = (from + to) >>> 1;
+            HiveChunk left = new HiveChunk(hives, from, middle, chunkSize);
+            left.fork();
+            HiveStatistics right = new HiveChunk(hives, middle, to, chunkSize).compute();
+            return left.join().merge(right);
+        }
+    }
+    
+    private static class ColumnChunk extends RecursiveTask<HiveStatistics> {
+        private static final long serialVersionUID = 1L;
+        
+        private final HiveColumns.Chunk[] chunks;
+        private final int from;
+        private final int to;
+        private final int chunksPerTask;
+        
+        ColumnChunk(HiveColumns.Chunk[] chunks, int from, int to, int chunksPerTask) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.chunksPerTask = chunksPerTask;
+        }
+        
+        @Override
+        protected HiveStatistics compute() {
+            if (to - from <= chunksPerTask) {
+                HiveStatistics statistics = new HiveStatistics();
+                for (int i = from; i < to; i++) {
+                    statistics.add(chunks[i]);
+                }
+                return statistics;
+            }
+            int middle = (from + to) >>> 1;
+            ColumnChunk left = new ColumnChunk(chunks, from, middle, chunksPerTask);
+            left.fork();
+            HiveStatistics right = new ColumnChunk(chunks, middle, to, chunksPerTask).compute();
+            return left.join().merge(right);
+        }
+    }
+    
+    private static class TaskChunk extends RecursiveTask<TaskStatistics> {
+        private static final long serialVersionUID = 1L;
+        
+        private final Task[] tasks;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final LocalDate today;
+        
+        TaskChunk(Task[] tasks, int from, int to, int chunkSize, LocalDate today) {
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.today = today;
+        }
+        
+        @Override
+        protected TaskStatistics compute() {
+            if (to - from <= chunkSize) {
+                TaskStatistics statistics = new TaskStatistics();
+                for (int i = from; i < to; i++) {
+                    statistics.add(tasks[i], today);
+                }
+                return statistics;
+            }
+            int middle = (from + to) >>> 1;
+            TaskChunk left = new TaskChunk(tasks, from, middle, chunkSize, today);
+            left.fork();
+            TaskStatistics right = new TaskChunk(tasks, middle, to, chunkSize, today).compute();
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Collection;
+
+// Fleet totals over all hives, kept current on every hive write so dashboard questions such as
+// "how many hives are queenless" are answered in constant time instead of by a scan.
+// Immutable like TaskIndex: a write returns new totals, adjusted by the difference between the values
+// the hive was last counted with and its current ones.
+public final class HiveAggregates {
+    public static final HiveAggregates EMPTY = new HiveAggregates(HiveColumns.EMPTY, 0, 0, 0, 0, 0);
+    
+    // The values every hive was counted with; hives are mutated in place before they are updated,
+    // so the old values cannot be read from the hive itself
+    private final HiveColumns counted;
+    private final long healthy;
+    private final long needsAttention;
+    private final long queenless;
+    private final double honeySum;
+    private final double honeySquareSum;
+    
+    private HiveAggregates(HiveColumns counted, long healthy, long needsAttention, long queenless,
+                           double honeySum, double honeySquareSum) {
+        this.counted = counted;
+        this.healthy = healthy;
+        this.needsAttention = needsAttention;
+        this.queenless = queenless;
+        this.honeySum = honeySum;
+        this.honeySquareSum = honeySquareSum;
+    }
+    
+    public static HiveAggregates of(Collection<Hive> hives) {
+        long healthy = 0;
+        long needsAttention = 0;
+        long queenless = 0;
+        double honeySum = 0;
+        double honeySquareSum = 0;
+        for (Hive hive : hives) {
+            healthy += hive.isHealthy() ? 1 : 0;
+            needsAttention += hive.isNeedsAttention() ? 1 : 0;
+            queenless += hive.isQueenless() ? 1 : 0;
+            honeySum += hive.getHoneyLevel();
+            honeySquareSum += hive.getHoneyLevel() * hive.getHoneyLevel();
+        }
+        return new HiveAggregates(HiveColumns.of(hives), healthy, needsAttention, queenless, honeySum, honeySquareSum);
+    }
+    
+    // Counts a new hive or applies the changes of an updated one
+    public HiveAggregates with(Hive hive) {
+        Hive previous = counted.get(hive.getId());
+        double previousHoney = previous != null ? previous.getHoneyLevel() : 0;
+        return new HiveAggregates(counted.plus(hive),
+                                  healthy + flagChange(previous != null && previous.isHealthy(), hive.isHealthy()),
+                                  needsAttention + flagChange(previous != null && previous.isNeedsAttention(), hive.isNeedsAttention()),
+                                  queenless + flagChange(previous != null && previous.isQueenless(), hive.isQueenless()),
+                                  honeySum - previousHoney + hive.getHoneyLevel(),
+                                  honeySquareSum - previousHoney * previousHoney + hive.getHoneyLevel() * hive.getHoneyLevel());
+    }
+    
+    public HiveAggregates without(int hiveId) {
+        Hive values = counted.get(hiveId);
+        if (values == null) {
+            return this;
+        }
+        HiveColumns remaining = counted.minus(hiveId);
+        if (remaining.isEmpty()) {
+            return EMPTY; // No rounding left over from the honey sums
+        }
+        return new HiveAggregates(remaining,
+                                  healthy - (values.isHealthy() ? 1 : 0),
+                                  needsAttention - (values.isNeedsAttention() ? 1 : 0),
+                                  queenless - (values.isQueenless() ? 1 : 0),
+                                  honeySum - values.getHoneyLevel(),
+                                  honeySquareSum - values.getHoneyLevel() * values.getHoneyLevel());
+    }
+    
+    private static int flagChange(boolean before, boolean after) {
+        return (after ? 1 : 0) - (before ? 1 : 0);
+    }
+    
+    // The counted values of every hive, current as of the last write
+    public HiveColumns getColumns() { return counted; }
+    public int getCount() { return counted.size(); }
+    public long getHealthy() { return healthy; }
+    public long getNeedsAttention() { return needsAttention; }
+    public long getQueenless() { return queenless; }
+    public double getHoneySum() { return honeySum; }
+    public double getHoneySquareSum() { return honeySquareSum; }
+    
+    public double getHoneyMean() {
+        return counted.isEmpty() ? 0 : honeySum / counted.size();
+    }
+    
+    public double getHoneyStdDev() {
+        if (counted.isEmpty()) {
+            return 0;
+        }
+        double mean = getHoneyMean();
+        return Math.sqrt(Math.max(0, honeySquareSum / counted.size() - mean * mean));
+    }
+}
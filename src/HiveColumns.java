@@ -0,0 +1,307 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+// Hives stored column by column instead of as one object per hive: the three flags are packed bit sets
+// and the honey levels a dense double array. IDs are split into chunks of 1024 consecutive IDs; a chunk
+// holds the columns for its IDs, so the slot of a hive is its ID within the chunk and no per-hive
+// lookup structure is needed. Chunks are found through a PersistentIntMap and copied on write, so like
+// PersistentIntMap a published instance never changes and can be read without locking.
+// Reading a hive returns a new Hive with the stored values; changes to it are stored by plus().
+// The flag columns double as bitmap indexes, together with one bit set per range of honey levels,
+// which HiveFilter combines a word at a time.
+public final class HiveColumns extends AbstractMap<Integer, Hive> {
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int WORDS = CHUNK_SIZE / 64;
+    
+    // Honey levels 0-10, 10-20, ... 90-100; the first and last ranges also take values outside 0-100
+    static final int HONEY_BUCKETS = 10;
+    static final double HONEY_BUCKET_WIDTH = 10;
+    
+    public static final HiveColumns EMPTY = new HiveColumns(PersistentIntMap.<Chunk>empty(), 0);
+    
+    static final class Chunk {
+        final int firstId;
+        final long[] present;
+        final long[] healthy;
+        final long[] needsAttention;
+        final long[] queenless;
+        final double[] honeyLevels;
+        // HONEY_BUCKETS bit sets of WORDS words each, one after the other
+        final long[] honeyBuckets;
+        final int count;
+        
+        Chunk(int firstId, long[] present, long[] healthy, long[] needsAttention, long[] queenless,
+              double[] honeyLevels, long[] honeyBuckets, int count) {
+            this.firstId = firstId;
+            this.present = present;
+            this.healthy = healthy;
+            this.needsAttention = needsAttention;
+            this.queenless = queenless;
+            this.honeyLevels = honeyLevels;
+            this.honeyBuckets = honeyBuckets;
+            this.count = count;
+        }
+        
+        static Chunk empty(int firstId, int count) {
+            return new Chunk(firstId, new long[WORDS], new long[WORDS], new long[WORDS], new long[WORDS],
+                             new double[CHUNK_SIZE], new long[HONEY_BUCKETS * WORDS], count);
+        }
+        
+        Chunk copy(int newCount) {
+            return new Chunk(firstId, present.clone(), healthy.clone(), needsAttention.clone(), queenless.clone(),
+                             honeyLevels.clone(), honeyBuckets.clone(), newCount);
+        }
+        
+        boolean contains(int slot) {
+            return (present[slot >>> 6] & (1L << slot)) != 0;
+        }
+        
+        // Only for chunks that are not published yet
+        void set(int slot, Hive hive) {
+            int word = slot >>> 6;
+            long bit = 1L << slot;
+            if ((present[word] & bit) != 0) {
+                honeyBuckets[honeyBucket(honeyLevels[slot]) * WORDS + word] &= ~bit;
+            }
+            present[word] |= bit;
+            healthy[word] = hive.isHealthy() ? healthy[word] | bit : healthy[word] & ~bit;
+            needsAttention[word] = hive.isNeedsAttention() ? needsAttention[word] | bit : needsAttention[word] & ~bit;
+            queenless[word] = hive.isQueenless() ? queenless[word] | bit : queenless[word] & ~bit;
+            honeyLevels[slot] = hive.getHoneyLevel();
+            honeyBuckets[honeyBucket(hive.getHoneyLevel()) * WORDS + word] |= bit;
+        }
+        
+        void clear(int slot) {
+            int word = slot >>> 6;
+            long bit = ~(1L << slot);
+            honeyBuckets[honeyBucket(honeyLevels[slot]) * WORDS + word] &= bit;
+            present[word] &= bit;
+            healthy[word] &= bit;
+            needsAttention[word] &= bit;
+            queenless[word] &= bit;
+            honeyLevels[slot] = 0;
+        }
+        
+        Hive hive(int slot) {
+            int word = slot >>> 6;
+            long bit = 1L << slot;
+            return new Hive(firstId + slot, (healthy[word] & bit) != 0, (needsAttention[word] & bit) != 0,
+                            (queenless[word] & bit) != 0, honeyLevels[slot]);
+        }
+    }
+    
+    private final PersistentIntMap<Chunk> chunks;
+    private final int size;
+    
+    private HiveColumns(PersistentIntMap<Chunk> chunks, int size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+    
+    // Fills the chunks in place before publishing them, instead of copying a chunk per hive
+    public static HiveColumns of(Collection<Hive> hives) {
+        IntObjectMap<Chunk> building = new IntObjectMap<>();
+        int size = 0;
+        for (Hive hive : hives) {
+            int key = hive.getId() >>> CHUNK_BITS;
+            Chunk chunk = building.get(key);
+            if (chunk == null) {
+                chunk = Chunk.empty(key << CHUNK_BITS, 0);
+                building.put(key, chunk);
+            }
+            int slot = hive.getId() & (CHUNK_SIZE - 1);
+            if (!chunk.contains(slot)) {
+                size++;
+            }
+            chunk.set(slot, hive);
+        }
+        
+        PersistentIntMap<Chunk> chunks = PersistentIntMap.empty();
+        for (Chunk chunk : building.values()) {
+            int count = 0;
+            for (long word : chunk.present) {
+                count += Long.bitCount(word);
+            }
+            chunks = chunks.plus(chunk.firstId >>> CHUNK_BITS, new Chunk(chunk.firstId, chunk.present, chunk.healthy, chunk.needsAttention,
+                                                                         chunk.queenless, chunk.honeyLevels, chunk.honeyBuckets, count));
+        }
+        return new HiveColumns(chunks, size);
+    }
+    
+    // Stores a new hive or the current values of an updated one
+    public HiveColumns plus(Hive hive) {
+        int key = hive.getId() >>> CHUNK_BITS;
+        int slot = hive.getId() & (CHUNK_SIZE - 1);
+        Chunk chunk = chunks.get(key);
+        boolean added = chunk == null || !chunk.contains(slot);
+        Chunk updated = chunk != null ? chunk.copy(chunk.count + (added ? 1 : 0)) : Chunk.empty(key << CHUNK_BITS, 1);
+        updated.set(slot, hive);
+        return new HiveColumns(chunks.plus(key, updated), added ? size + 1 : size);
+    }
+    
+    public HiveColumns minus(int id) {
+        int key = id >>> CHUNK_BITS;
+        int slot = id & (CHUNK_SIZE - 1);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null || !chunk.contains(slot)) {
+            return this;
+        }
+        if (chunk.count == 1) {
+            return new HiveColumns(chunks.minus(key), size - 1);
+        }
+        Chunk updated = chunk.copy(chunk.count - 1);
+        updated.clear(slot);
+        return new HiveColumns(chunks.plus(key, updated), size - 1);
+    }
+    
+    public Hive get(int id) {
+        Chunk chunk = chunks.get(id >>> CHUNK_BITS);
+        int slot = id & (CHUNK_SIZE - 1);
+        return chunk != null && chunk.contains(slot) ? chunk.hive(slot) : null;
+    }
+    
+    public boolean containsKey(int id) {
+        Chunk chunk = chunks.get(id >>> CHUNK_BITS);
+        return chunk != null && chunk.contains(id & (CHUNK_SIZE - 1));
+    }
+    
+    public int lastKey() {
+        if (chunks.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        Chunk chunk = chunks.get(chunks.lastKey());
+        for (int word = WORDS - 1; ; word--) {
+            if (chunk.present[word] != 0) {
+                return chunk.firstId + word * 64 + 63 - Long.numberOfLeadingZeros(chunk.present[word]);
+            }
+        }
+    }
+    
+    // The chunks in ID order, for scans that read the columns directly
+    Collection<Chunk> chunks() {
+        return chunks.values();
+    }
+    
+    public int count(HiveFilter filter) {
+        int count = 0;
+        for (Chunk chunk : chunks.values()) {
+            for (int word = 0; word < WORDS; word++) {
+                count += Long.bitCount(filter.matches(chunk, word) & chunk.present[word]);
+            }
+        }
+        return count;
+    }
+    
+    // Passes the IDs of the matching hives in ascending order
+    public void forEachMatch(HiveFilter filter, IntConsumer action) {
+        for (Chunk chunk : chunks.values()) {
+            for (int word = 0; word < WORDS; word++) {
+                for (long bits = filter.matches(chunk, word) & chunk.present[word]; bits != 0; bits &= bits - 1) {
+                    action.accept(chunk.firstId + word * 64 + Long.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+    }
+    
+    static int honeyBucket(double honey) {
+        if (!(honey >= HONEY_BUCKET_WIDTH)) {
+            return 0; // Also NaN
+        }
+        return (int) Math.min(HONEY_BUCKETS - 1, honey / HONEY_BUCKET_WIDTH);
+    }
+    
+    @Override
+    public Hive get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    @Override
+    public Set<Map.Entry<Integer, Hive>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, Hive>>() {
+            @Override
+            public Iterator<Map.Entry<Integer, Hive>> iterator() {
+                return new Cursor<Map.Entry<Integer, Hive>>() {
+                    @Override
+                    Map.Entry<Integer, Hive> current(Hive hive) {
+                        return new AbstractMap.SimpleImmutableEntry<>(hive.getId(), hive);
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    @Override
+    public Collection<Hive> values() {
+        return new AbstractCollection<Hive>() {
+            @Override
+            public Iterator<Hive> iterator() {
+                return new Cursor<Hive>() {
+                    @Override
+                    Hive current(Hive hive) {
+                        return hive;
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    // Walks the present bits of every chunk in ID order
+    private abstract class Cursor<T> implements Iterator<T> {
+        private final Iterator<Chunk> chunkIterator = chunks.values().iterator();
+        private Chunk chunk;
+        private int word;
+        private long remainingBits;
+        private int remaining = size;
+        
+        abstract T current(Hive hive);
+        
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+        
+        @Override
+        public T next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            while (remainingBits == 0) {
+                if (chunk == null || ++word == WORDS) {
+                    chunk = chunkIterator.next();
+                    word = 0;
+                }
+                remainingBits = chunk.present[word];
+            }
+            int slot = word * 64 + Long.numberOfTrailingZeros(remainingBits);
+            remainingBits &= remainingBits - 1;
+            remaining--;
+            return current(chunk.hive(slot));
+        }
+    }
+}
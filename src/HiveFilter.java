@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Compound conditions over the hive flags and honey level, such as "queenless and not healthy" or
+// "attention and honey < 20". They are evaluated on the bitmap indexes in HiveColumns 64 hives at a
+// time: a flag is one bitmap word, AND/OR/NOT are single word operations and a honey range combines
+// whole honey buckets, reading single honey levels only in the buckets it covers partly.
+public abstract class HiveFilter {
+    private static final Pattern TOKEN = Pattern.compile("\\s*(<=|>=|<|>|=|\\(|\\)|-?[0-9]+(?:\\.[0-9]+)?%?|[A-Za-z-]+)");
+    
+    // Bits of the hives in one word of the chunk that match; bits of absent hives are ignored by the caller
+    abstract long matches(HiveColumns.Chunk chunk, int word);
+    
+    public static HiveFilter healthy() {
+        return new Flag("healthy") {
+            @Override
+            long matches(HiveColumns.Chunk chunk, int word) {
+                return chunk.healthy[word];
+            }
+        };
+    }
+    
+    public static HiveFilter needsAttention() {
+        return new Flag("attention") {
+            @Override
+            long matches(HiveColumns.Chunk chunk, int word) {
+                return chunk.needsAttention[word];
+            }
+        };
+    }
+    
+    public static HiveFilter queenless() {
+        return new Flag("queenless") {
+            @Override
+            long matches(HiveColumns.Chunk chunk, int word) {
+                return chunk.queenless[word];
+            }
+        };
+    }
+    
+    // Honey level from (inclusive) to (exclusive), in percent
+    public static HiveFilter honeyBetween(double from, double to) {
+        return new HoneyRange(from, to, "(honey >= " + format(from) + " and honey < " + format(to) + ")");
+    }
+    
+    public static HiveFilter honeyBelow(double level) {
+        return new HoneyRange(Double.NEGATIVE_INFINITY, level, "honey < " + format(level));
+    }
+    
+    public static HiveFilter honeyAtLeast(double level) {
+        return new HoneyRange(level, Double.POSITIVE_INFINITY, "honey >= " + format(level));
+    }
+    
+    private static String format(double level) {
+        return level == Math.rint(level) ? String.valueOf((long) level) : String.valueOf(level);
+    }
+    
+    public HiveFilter and(HiveFilter other) {
+        HiveFilter left = this;
+        return new HiveFilter() {
+            @Override
+            long matches(HiveColumns.Chunk chunk, int word) {
+                long bits = left.matches(chunk, word);
+                return bits == 0 ? 0 : bits & other.matches(chunk, word);
+            }
+            
+            @Override
+            public String toString() {
+                return "(" + left + " and " + other + ")";
+            }
+        };
+    }
+    
+    public HiveFilter or(HiveFilter other) {
+        HiveFilter left = this;
+        return new HiveFilter() {
+            @Override
+            long matches(HiveColumns.Chunk chunk, int word) {
+                return left.matches(chunk, word) | other.matches(chunk, word);
+            }
+            
+            @Override
+            public String toString() {
+                return "(" + left + " or " + other + ")";
+            }
+        };
+    }
+    
+    public HiveFilter negate() {
+        HiveFilter inner = this;
+        return new HiveFilter() {
+            @Override
+            long matches(HiveColumns.Chunk chunk, int word) {
+                return ~inner.matches(chunk, word);
+            }
+            
+            @Override
+            public String toString() {
+                return "not " + inner;
+            }
+        };
+    }
+    
+    private abstract static class Flag extends HiveFilter {
+        private final String name;
+        
+        Flag(String name) {
+            this.name = name;
+        }
+        
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    
+    private static final class HoneyRange extends HiveFilter {
+        private final double from;
+        private final double to;
+        private final String label;
+        private final int firstBucket;
+        private final int lastBucket;
+        
+        HoneyRange(double from, double to, String label) {
+            this.from = from;
+            this.to = to;
+            this.label = label;
+            this.firstBucket = HiveColumns.honeyBucket(from);
+            this.lastBucket = HiveColumns.honeyBucket(Math.nextDown(to));
+        }
+        
+        @Override
+        long matches(HiveColumns.Chunk chunk, int word) {
+            long result = 0;
+            for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                long bits = chunk.honeyBuckets[bucket * HiveColumns.WORDS + word];
+                if (bits == 0) {
+                    continue;
+                }
+                double bucketStart = bucket == 0 ? Double.NEGATIVE_INFINITY : bucket * HiveColumns.HONEY_BUCKET_WIDTH;
+                double bucketEnd = bucket == HiveColumns.HONEY_BUCKETS - 1 ? Double.POSITIVE_INFINITY
+                                                                           : (bucket + 1) * HiveColumns.HONEY_BUCKET_WIDTH;
+                if (from <= bucketStart && bucketEnd <= to) {
+                    result |= bits;
+                    continue;
+                }
+                // Bucket only partly inside the range: check the levels themselves
+                for (; bits != 0; bits &= bits - 1) {
+                    double honey = chunk.honeyLevels[word * 64 + Long.numberOfTrailingZeros(bits)];
+                    if (honey >= from && honey < to) {
+                        result |= bits & -bits;
+                    }
+                }
+            }
+            return result;
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+    
+    // Parses filters such as "queenless and not healthy" or "(attention or queenless) and honey <= 20".
+    // NOT binds tighter than AND, which binds tighter than OR.
+    public static HiveFilter parse(String text) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        int position = 0;
+        while (matcher.find() && matcher.start() == position) {
+            tokens.add(matcher.group(1).toLowerCase(Locale.ROOT));
+            position = matcher.end();
+        }
+        if (!text.substring(position).trim().isEmpty()) {
+            throw new IllegalArgumentException("Unexpected input: " + text.substring(position).trim());
+        }
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty filter");
+        }
+        Parser parser = new Parser(tokens);
+        HiveFilter filter = parser.or();
+        if (parser.position < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(parser.position) + "'");
+        }
+        return filter;
+    }
+    
+    private static final class Parser {
+        private final List<String> tokens;
+        private int position;
+        
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+        
+        HiveFilter or() {
+            HiveFilter filter = and();
+            while (accept("or")) {
+                filter = filter.or(and());
+            }
+            return filter;
+        }
+        
+        HiveFilter and() {
+            HiveFilter filter = not();
+            while (accept("and")) {
+                filter = filter.and(not());
+            }
+            return filter;
+        }
+        
+        HiveFilter not() {
+            if (accept("not")) {
+                return not().negate();
+            }
+            if (accept("(")) {
+                HiveFilter filter = or();
+                expect(")");
+                return filter;
+            }
+            String token = next();
+            switch (token) {
+                case "healthy":
+                    return healthy();
+                case "unhealthy":
+                    return healthy().negate();
+                case "attention":
+                case "needs-attention":
+                    return needsAttention();
+                case "queenless":
+                    return queenless();
+                case "honey":
+                    return honey();
+                default:
+                    throw new IllegalArgumentException("Unknown condition '" + token + "'");
+            }
+        }
+        
+        private HiveFilter honey() {
+            String operator = next();
+            String number = next();
+            double level;
+            try {
+                level = Double.parseDouble(number.endsWith("%") ? number.substring(0, number.length() - 1) : number);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a honey level after '" + operator + "', got '" + number + "'");
+            }
+            String label = "honey " + operator + " " + format(level);
+            switch (operator) {
+                case "<":
+                    return new HoneyRange(Double.NEGATIVE_INFINITY, level, label);
+                case "<=":
+                    return new HoneyRange(Double.NEGATIVE_INFINITY, Math.nextUp(level), label);
+                case ">":
+                    return new HoneyRange(Math.nextUp(level), Double.POSITIVE_INFINITY, label);
+                case ">=":
+                    return new HoneyRange(level, Double.POSITIVE_INFINITY, label);
+                case "=":
+                    return new HoneyRange(level, Math.nextUp(level), label);
+                default:
+                    throw new IllegalArgumentException("Expected <, <=, >, >= or = after 'honey', got '" + operator + "'");
+            }
+        }
+        
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new IllegalArgumentException("Expected '" + token + "'");
+            }
+        }
+        
+        private String next() {
+            if (position == tokens.size()) {
+                throw new IllegalArgumentException("Filter ends too early");
+            }
+            return tokens.get(position++);
+        }
+    }
+}
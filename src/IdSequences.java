@@ -0,0 +1,98 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntSupplier;
+
+// Persisted ID sequences, one per entity type. Each process reserves a block of IDs at a time under a
+// file lock and hands them out from memory, so sessions never allocate the same ID and most calls
+// do not touch the file at all.
+public class IdSequences {
+    private static final int MAGIC = 0x42534551; // "BSEQ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTITY_COUNT = WriteAheadLog.ENTITY_REPORT + 1;
+    private static final int FILE_SIZE = HEADER_SIZE + ENTITY_COUNT * 4;
+    
+    private final FileChannel channel;
+    private final int blockSize;
+    private final boolean force;
+    
+    // The reserved block of every entity type: next ID to hand out and the first ID past the block
+    private final int[] nextIds = new int[ENTITY_COUNT];
+    private final int[] blockEnds = new int[ENTITY_COUNT];
+    
+    public IdSequences(String path, int blockSize, boolean force) throws IOException {
+        this.channel = FileChannel.open(new File(path).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.blockSize = Math.max(1, blockSize);
+        this.force = force;
+    }
+    
+    // Returns the first of count consecutive unused IDs. The floor is the lowest ID that is not in use
+    // according to the loaded data, which covers IDs created before the sequence file existed.
+    public synchronized int allocate(byte entity, int count, IntSupplier floor) throws IOException {
+        int lowest = floor.getAsInt();
+        if (nextIds[entity] < lowest || blockEnds[entity] - nextIds[entity] < count) {
+            reserve(entity, Math.max(count, blockSize), lowest);
+        }
+        int first = nextIds[entity];
+        nextIds[entity] += count;
+        return first;
+    }
+    
+    @SuppressWarnings("try")
+    private void reserve(byte entity, int size, int lowest) throws IOException {
+        try (FileLock fileLock = FileLocks.lock(channel)) {
+            int[] stored = read();
+            int first = Math.max(stored[entity], Math.max(lowest, 1));
+            stored[entity] = first + size;
+            write(stored);
+            nextIds[entity] = first;
+            blockEnds[entity] = first + size;
+        }
+    }
+    
+    // A missing or unreadable file starts every sequence over, the floor keeps IDs unique in that case
+    private int[] read() throws IOException {
+        int[] stored = new int[ENTITY_COUNT];
+        if (channel.size() < FILE_SIZE) {
+            return stored;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return stored;
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return stored;
+        }
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            stored[i] = buffer.getInt();
+        }
+        return stored;
+    }
+    
+    private void write(int[] stored) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        for (int value : stored) {
+            buffer.putInt(value);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+    
+    public void close() throws IOException {
+        channel.close();
+    }
+}
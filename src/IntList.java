@@ -0,0 +1,129 @@
+import java.io.Serializable;
+import java.util.*;
+
+// Growable list of ints kept in a plain int array, for ID lists such as the hives and tasks a report
+// refers to: four bytes per ID instead of a reference plus an Integer. It is a List<Integer> for existing
+// callers; getInt, add(int) and contains(int) read and write the array without boxing.
+public final class IntList extends AbstractList<Integer> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int[] NONE = {};
+    
+    private int[] elements;
+    private int size;
+    
+    public IntList() {
+        elements = NONE;
+    }
+    
+    public IntList(int capacity) {
+        elements = capacity > 0 ? new int[capacity] : NONE;
+    }
+    
+    // The list itself if it already is an IntList, otherwise a copy
+    public static IntList from(Collection<Integer> values) {
+        if (values instanceof IntList) {
+            return (IntList) values;
+        }
+        IntList list = new IntList(values.size());
+        for (Integer value : values) {
+            list.add(value.intValue());
+        }
+        return list;
+    }
+    
+    public int getInt(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+    
+    public boolean add(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(4, size + (size >> 1)));
+        }
+        elements[size++] = value;
+        modCount++;
+        return true;
+    }
+    
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+    
+    public int[] toIntArray() {
+        return Arrays.copyOf(elements, size);
+    }
+    
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+    
+    @Override
+    public Integer set(int index, Integer value) {
+        checkIndex(index);
+        int previous = elements[index];
+        elements[index] = value;
+        return previous;
+    }
+    
+    @Override
+    public boolean add(Integer value) {
+        return add(value.intValue());
+    }
+    
+    @Override
+    public void add(int index, Integer value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        add(0);
+        System.arraycopy(elements, index, elements, index + 1, size - 1 - index);
+        elements[index] = value;
+    }
+    
+    @Override
+    public Integer remove(int index) {
+        checkIndex(index);
+        int previous = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - 1 - index);
+        size--;
+        modCount++;
+        return previous;
+    }
+    
+    @Override
+    public int indexOf(Object value) {
+        return value instanceof Integer ? indexOf(((Integer) value).intValue()) : -1;
+    }
+    
+    @Override
+    public boolean contains(Object value) {
+        return indexOf(value) >= 0;
+    }
+    
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,538 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless load test: many concurrent sessions run the same DataManager calls as the admin and
+// employee menus, against the data files in the working directory. Sessions run on virtual threads
+// when the JVM has them (Java 21+) and on platform threads otherwise. With --processes N the sessions
+// are split over N child JVMs sharing the data files, which is how production runs.
+//   java -cp src LoadHarness --sessions 2000 --duration 30 --processes 4
+// Afterwards a fresh JVM loads the data from disk and checks that every created task, submitted report,
+// completed task, task assignment and hive edit made it, so lost writes show up. The exit code is 1 when
+// any operation failed, storage reported an error or a write was lost.
+public class LoadHarness {
+    private final int sessions;
+    private final int durationSeconds;
+    private final double adminShare;
+    private final long thinkMillis;
+    
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final LatencyHistogram allLatencies = new LatencyHistogram();
+    private final LongAdder failedOperations = new LongAdder();
+    private long storageErrors;
+    
+    // Writes that must survive: one line per created task, submitted report, completed task, assignment and hive edit
+    private final Queue<String> expectations = new java.util.concurrent.ConcurrentLinkedQueue<>();
+    
+    private DataManager dataManager;
+    private List<User> admins;
+    private List<User> employees;
+    
+    public LoadHarness(int sessions, int durationSeconds, double adminShare, long thinkMillis) {
+        this.sessions = sessions;
+        this.durationSeconds = durationSeconds;
+        this.adminShare = adminShare;
+        this.thinkMillis = thinkMillis;
+    }
+    
+    // Runs all sessions in this JVM until the duration is over
+    public void run() throws InterruptedException {
+        dataManager = DataManager.getInstance();
+        admins = new ArrayList<>();
+        employees = new ArrayList<>();
+        for (User user : dataManager.getUsers().values()) {
+            (user.getRole() == User.Role.ADMIN ? admins : employees).add(user);
+        }
+        if (admins.isEmpty() || employees.isEmpty()) {
+            throw new IllegalStateException("The data needs at least one admin and one employee");
+        }
+        
+        LongAdder storageErrorsBefore = Metrics.getInstance().counter("beehive_data_storage_errors_total", "");
+        long errorsAtStart = storageErrorsBefore.sum();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService executor = newSessionExecutor();
+        for (int i = 0; i < sessions; i++) {
+            boolean admin = i < Math.round(sessions * adminShare);
+            User user = admin ? admins.get(i % admins.size()) : employees.get(i % employees.size());
+            executor.execute(() -> runSession(user, deadline));
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationSeconds + 300L, TimeUnit.SECONDS);
+        
+        dataManager.flush();
+        ActivityLogger.getInstance().flush();
+        storageErrors = storageErrorsBefore.sum() - errorsAtStart;
+    }
+    
+    // Java 21 virtual threads through reflection, so the code still compiles for Java 8
+    static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+    
+    private void runSession(User user, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            double roll = random.nextDouble();
+            if (user.getRole() == User.Role.ADMIN) {
+                if (roll < 0.3) {
+                    timed("admin_view_tasks", () -> viewTasks(random));
+                } else if (roll < 0.55) {
+                    timed("admin_create_task", () -> createTasks(user, random));
+                } else if (roll < 0.8) {
+                    timed("admin_assign_task", () -> assignTask(random));
+                } else {
+                    timed("admin_view_reports", this::viewReports);
+                }
+            } else {
+                if (roll < 0.05) {
+                    timed("employee_login", () -> login(user));
+                } else if (roll < 0.4) {
+                    timed("employee_view_tasks", () -> viewMyTasks(user));
+                } else if (roll < 0.65) {
+                    timed("employee_complete_task", () -> completeTask(user));
+                } else if (roll < 0.85) {
+                    timed("employee_submit_report", () -> submitReport(user, random));
+                } else {
+                    timed("employee_edit_hive", () -> editHive(random));
+                }
+            }
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(random.nextLong(thinkMillis * 2 + 1));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+    
+    private void timed(String operation, Runnable workflow) {
+        long start = System.nanoTime();
+        try {
+            workflow.run();
+        } catch (RuntimeException e) {
+            failedOperations.increment();
+        }
+        long elapsed = System.nanoTime() - start;
+        latencies.computeIfAbsent(operation, key -> new LatencyHistogram()).record(elapsed);
+        allLatencies.record(elapsed);
+    }
+    
+    // The workflows below make the same DataManager calls as the menu actions they are named after
+    
+    private void login(User user) {
+        User found = dataManager.getUserByEmail(user.getEmail());
+        if (found == null || !found.authenticate(user.getPassword())) {
+            throw new IllegalStateException("Login failed for " + user.getEmail());
+        }
+    }
+    
+    private void viewMyTasks(User user) {
+        dataManager.reloadDataFromFile();
+        dataManager.getTasksAssignedTo(user.getId());
+    }
+    
+    private void completeTask(User user) {
+        dataManager.reloadDataFromFile();
+        for (Task task : dataManager.getTasksAssignedTo(user.getId())) {
+            if (task.getStatus() != Task.Status.COMPLETED) {
+                user.completeTask(task);
+                requireStored(dataManager.updateTask(task) && dataManager.updateUser(user));
+                dataManager.flush();
+                expectations.add("completed " + task.getId());
+                return;
+            }
+        }
+    }
+    
+    private void submitReport(User user, Random random) {
+        dataManager.reloadDataFromFile();
+        IntList hiveIds = new IntList();
+        Hive hive = randomHive(random);
+        if (hive != null) {
+            hiveIds.add(hive.getId());
+        }
+        int reportId = dataManager.getNextReportId();
+        requireStored(dataManager.addReport(new Report(reportId, user.getId(), user.getName(), "Load test report " + reportId,
+                                                       hiveIds, new IntList())));
+        expectations.add("report " + reportId);
+    }
+    
+    // Edits one field like the menu does, on a copy so the recorded state is exactly what was stored
+    private void editHive(Random random) {
+        dataManager.reloadDataFromFile();
+        Hive current = randomHive(random);
+        if (current == null) {
+            return;
+        }
+        Hive hive = new Hive(current.getId(), current.isHealthy(), current.isNeedsAttention(), current.isQueenless(),
+                             current.getHoneyLevel());
+        switch (random.nextInt(4)) {
+            case 0:
+                hive.setHealthy(!hive.isHealthy());
+                break;
+            case 1:
+                hive.setNeedsAttention(!hive.isNeedsAttention());
+                break;
+            case 2:
+                hive.setQueenless(!hive.isQueenless());
+                break;
+            default:
+                hive.setHoneyLevel(random.nextInt(101));
+        }
+        requireStored(dataManager.updateHive(hive));
+        expectations.add("hive " + hive.getId() + " " + hiveState(hive));
+    }
+    
+    private static String hiveState(Hive hive) {
+        return hive.isHealthy() + " " + hive.isNeedsAttention() + " " + hive.isQueenless() + " " + hive.getHoneyLevel();
+    }
+    
+    private void viewTasks(Random random) {
+        dataManager.reloadDataFromFile();
+        Task.Status[] statuses = Task.Status.values();
+        dataManager.getTasksByStatus(statuses[random.nextInt(statuses.length)]);
+    }
+    
+    private void createTasks(User admin, Random random) {
+        int count = 1 + random.nextInt(3);
+        int newId = dataManager.allocateTaskIds(count);
+        for (int i = 0; i < count; i++) {
+            Hive hive = randomHive(random);
+            int hiveId = hive != null ? hive.getId() : 1;
+            requireStored(dataManager.addTask(new Task(newId + i, "Load test task by " + admin.getId(), Task.Type.INSPECT_HIVE, hiveId,
+                                                       LocalDate.now(), LocalDate.now().plusDays(7))));
+            expectations.add("task " + (newId + i));
+        }
+        dataManager.flush();
+    }
+    
+    private void assignTask(Random random) {
+        dataManager.reloadDataFromFile();
+        int maxTaskId = Math.max(1, dataManager.getTasks().size());
+        for (int attempt = 0; attempt < 5; attempt++) {
+            Task task = dataManager.getTask(1 + random.nextInt(maxTaskId));
+            if (task != null && !task.isAssigned() && task.getStatus() != Task.Status.COMPLETED) {
+                User employee = employees.get(random.nextInt(employees.size()));
+                employee.assignTask(task);
+                requireStored(dataManager.updateTask(task) && dataManager.updateUser(employee));
+                expectations.add("assigned " + task.getId() + " " + employee.getId());
+                return;
+            }
+        }
+    }
+    
+    private void viewReports() {
+        dataManager.reloadDataFromFile();
+        dataManager.getReports().size();
+    }
+    
+    // A write the data manager could not store counts as a failed operation
+    private static void requireStored(boolean stored) {
+        if (!stored) {
+            throw new IllegalStateException("The change could not be stored");
+        }
+    }
+    
+    private Hive randomHive(Random random) {
+        int count = dataManager.getHives().size();
+        return count > 0 ? dataManager.getHive(1 + random.nextInt(count)) : null;
+    }
+    
+    // Results of a child JVM: latencies per operation, error counts and the writes to verify
+    private void writeResults(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(latencies.size());
+            for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+            out.writeLong(failedOperations.sum());
+            out.writeLong(storageErrors);
+            out.writeInt(expectations.size());
+            for (String expectation : expectations) {
+                out.writeUTF(expectation);
+            }
+        }
+    }
+    
+    private void mergeResults(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int operations = in.readInt();
+            for (int i = 0; i < operations; i++) {
+                String operation = in.readUTF();
+                byte[] encoded = readHistogram(in);
+                latencies.computeIfAbsent(operation, key -> new LatencyHistogram())
+                         .mergeFrom(new DataInputStream(new ByteArrayInputStream(encoded)));
+                allLatencies.mergeFrom(new DataInputStream(new ByteArrayInputStream(encoded)));
+            }
+            failedOperations.add(in.readLong());
+            storageErrors += in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                expectations.add(in.readUTF());
+            }
+        }
+    }
+    
+    // Copies one histogram as written by writeTo, so it can be merged twice
+    private static byte[] readHistogram(DataInputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream copy = new DataOutputStream(bytes);
+        int used = in.readInt();
+        copy.writeInt(used);
+        for (int i = 0; i < used; i++) {
+            copy.writeShort(in.readShort());
+            copy.writeLong(in.readLong());
+        }
+        for (int i = 0; i < 3; i++) {
+            copy.writeLong(in.readLong());
+        }
+        return bytes.toByteArray();
+    }
+    
+    // Splits the sessions over child JVMs that share the data files, then merges their results
+    private void runProcesses(int processes, List<String> childOptions) throws IOException, InterruptedException {
+        List<Process> children = new ArrayList<>();
+        List<File> resultFiles = new ArrayList<>();
+        for (int i = 0; i < processes; i++) {
+            File results = File.createTempFile("load_harness", ".results");
+            results.deleteOnExit();
+            resultFiles.add(results);
+            
+            int childSessions = sessions / processes + (i < sessions % processes ? 1 : 0);
+            List<String> command = javaCommand();
+            command.add("--child");
+            command.add(results.getPath());
+            command.add("--sessions");
+            command.add(String.valueOf(childSessions));
+            command.addAll(childOptions);
+            children.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        for (int i = 0; i < processes; i++) {
+            int exitCode = children.get(i).waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Load harness process " + (i + 1) + " failed with exit code " + exitCode);
+            }
+            mergeResults(resultFiles.get(i));
+        }
+    }
+    
+    // Checks the expected writes in a fresh JVM that only knows what is on disk
+    private int verifyInFreshProcess() throws IOException, InterruptedException {
+        File expected = File.createTempFile("load_harness", ".expected");
+        expected.deleteOnExit();
+        Files.write(expected.toPath(), expectations, StandardCharsets.UTF_8);
+        
+        List<String> command = javaCommand();
+        command.add("--verify");
+        command.add(expected.getPath());
+        Process verifier = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        try (InputStream in = verifier.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            output = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+        }
+        if (verifier.waitFor() != 0) {
+            throw new IOException("Verification failed: " + output);
+        }
+        String[] lines = output.split("\\R");
+        return Integer.parseInt(lines[lines.length - 1].trim());
+    }
+    
+    // Prints the number of expected writes missing from the data on disk. Sessions in different processes
+    // may assign the same task or edit the same hive, and only the last write of those wins, so for them
+    // the value on disk has to be one of the values that were written.
+    private static void verify(File expected) throws IOException {
+        DataManager dataManager = DataManager.getInstance();
+        int lost = 0;
+        Map<String, Set<String>> overwritable = new HashMap<>();
+        for (String line : Files.readAllLines(expected.toPath(), StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ", 3);
+            int id = Integer.parseInt(parts[1]);
+            boolean present;
+            switch (parts[0]) {
+                case "assigned":
+                case "hive":
+                    overwritable.computeIfAbsent(parts[0] + " " + id, key -> new HashSet<>()).add(parts[2]);
+                    continue;
+                case "task":
+                    present = dataManager.getTask(id) != null;
+                    break;
+                case "report":
+                    present = dataManager.getReport(id) != null;
+                    break;
+                default:
+                    Task task = dataManager.getTask(id);
+                    present = task != null && task.getStatus() == Task.Status.COMPLETED;
+            }
+            if (!present) {
+                lost++;
+            }
+        }
+        
+        for (Map.Entry<String, Set<String>> entry : overwritable.entrySet()) {
+            String[] key = entry.getKey().split(" ");
+            int id = Integer.parseInt(key[1]);
+            String stored;
+            if (key[0].equals("hive")) {
+                Hive hive = dataManager.getHive(id);
+                stored = hive != null ? hiveState(hive) : null;
+            } else {
+                Task task = dataManager.getTask(id);
+                // A completed task no longer has an assignee
+                if (task != null && task.getStatus() == Task.Status.COMPLETED) {
+                    continue;
+                }
+                stored = task != null ? String.valueOf(task.getAssignedUserId()) : null;
+            }
+            if (stored == null || !entry.getValue().contains(stored)) {
+                lost++;
+            }
+        }
+        System.out.println(lost);
+    }
+    
+    // Same JVM, classpath and beehive.* settings as this process
+    private static List<String> javaCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("beehive.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadHarness.class.getName());
+        return command;
+    }
+    
+    private void printReport(long elapsedNanos, int processes, int lostWrites) {
+        double seconds = elapsedNanos / 1e9;
+        long operations = allLatencies.getCount();
+        System.out.printf("%nSessions: %d in %d process(es), %s threads%n", sessions, processes,
+                          newSessionExecutorKind());
+        System.out.printf("Operations: %d in %.1f s, %.0f ops/s%n", operations, seconds, operations / seconds);
+        Map<String, LatencyHistogram> sorted = new TreeMap<>(latencies);
+        sorted.put("all", allLatencies);
+        printLatencies(sorted);
+        System.out.println("Failed operations: " + failedOperations.sum());
+        System.out.println("Storage and lock errors: " + storageErrors);
+        System.out.println("Lost writes: " + lostWrites + " of " + expectations.size());
+    }
+    
+    // One row per operation, latencies recorded in nanoseconds
+    static void printLatencies(Map<String, LatencyHistogram> latencies) {
+        System.out.printf("%-24s %10s %10s %10s %10s %10s%n", "Operation", "Count", "p50 ms", "p99 ms", "p999 ms", "Max ms");
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            System.out.printf("%-24s %10d %10.2f %10.2f %10.2f %10.2f%n", entry.getKey(), histogram.getCount(),
+                              histogram.getPercentile(0.5) / 1e6, histogram.getPercentile(0.99) / 1e6,
+                              histogram.getPercentile(0.999) / 1e6, histogram.getMax() / 1e6);
+        }
+    }
+    
+    private static String newSessionExecutorKind() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return "virtual";
+        } catch (NoSuchMethodException e) {
+            return "platform";
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int sessions = 1000;
+        int duration = 30;
+        int processes = 1;
+        double adminShare = 0.1;
+        long thinkMillis = 0;
+        File childResults = null;
+        List<String> childOptions = new ArrayList<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                usage();
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--verify":
+                    verify(new File(value));
+                    System.exit(0);
+                    return;
+                case "--child":
+                    childResults = new File(value);
+                    break;
+                case "--sessions":
+                    sessions = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    duration = Integer.parseInt(value);
+                    childOptions.add(option);
+                    childOptions.add(value);
+                    break;
+                case "--processes":
+                    processes = Integer.parseInt(value);
+                    break;
+                case "--admins":
+                    adminShare = Double.parseDouble(value);
+                    childOptions.add(option);
+                    childOptions.add(value);
+                    break;
+                case "--think":
+                    thinkMillis = Long.parseLong(value);
+                    childOptions.add(option);
+                    childOptions.add(value);
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+        
+        LoadHarness harness = new LoadHarness(sessions, duration, adminShare, thinkMillis);
+        if (childResults != null) {
+            harness.run();
+            harness.writeResults(childResults);
+            System.exit(0);
+        }
+        
+        long start = System.nanoTime();
+        if (processes > 1) {
+            harness.runProcesses(processes, childOptions);
+        } else {
+            harness.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        int lostWrites = harness.verifyInFreshProcess();
+        harness.printReport(elapsed, processes, lostWrites);
+        System.exit(harness.failedOperations.sum() > 0 || harness.storageErrors > 0 || lostWrites > 0 ? 1 : 0);
+    }
+    
+    private static void usage() {
+        System.out.println("Usage: java -cp src LoadHarness [--sessions N] [--duration seconds] [--processes N] "
+                           + "[--admins fraction] [--think ms]");
+    }
+}
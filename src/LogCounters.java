@@ -0,0 +1,27 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Delivery counters of the activity log. Every entry is counted once as written, spilled or dropped;
+// spilled entries are counted as written again once they are copied from the overflow file.
+// Entries the binary log could not keep are counted as dropped as well, on top of their text line.
+public class LogCounters {
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    
+    void recordEnqueued() { enqueued.increment(); }
+    void recordWritten(long count) { written.add(count); }
+    void recordSpilled(long count) { spilled.add(count); }
+    void recordDropped(long count) { dropped.add(count); }
+    
+    public long getEnqueued() { return enqueued.sum(); }
+    public long getWritten() { return written.sum(); }
+    public long getSpilled() { return spilled.sum(); }
+    public long getDropped() { return dropped.sum(); }
+    
+    @Override
+    public String toString() {
+        return "Enqueued: " + getEnqueued() + ", Written: " + getWritten() +
+               ", Spilled: " + getSpilled() + ", Dropped: " + getDropped();
+    }
+}
@@ -0,0 +1,158 @@
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Encodes activity log lines straight into a reusable byte buffer, producing the same text as
+// "[yyyy-MM-dd HH:mm:ss] User 7 (Jane): action" without building intermediate strings. The
+// timestamp prefix is only recomputed when the second changes. Not thread-safe; every writer owns one.
+public class LogLineEncoder {
+    private static final byte[] SYSTEM_PREFIX = "SYSTEM: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] USER_PREFIX = "User ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final int PREFIX_LENGTH = 22;
+    
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final byte[] timestampPrefix = new byte[PREFIX_LENGTH];
+    private long cachedSecond = Long.MIN_VALUE;
+    
+    private byte[] buffer;
+    private int length;
+    
+    public LogLineEncoder(int initialCapacity) {
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+    
+    public byte[] buffer() {
+        return buffer;
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    public void reset() {
+        length = 0;
+    }
+    
+    // Appends one line after the ones already in the buffer
+    public void encode(long timestamp, boolean system, int userId, String userName, String action) {
+        writeTimestampPrefix(timestamp);
+        if (system) {
+            put(SYSTEM_PREFIX);
+        } else {
+            put(USER_PREFIX);
+            putInt(userId);
+            putByte((byte) ' ');
+            putByte((byte) '(');
+            putString(userName);
+            putByte((byte) ')');
+            putByte((byte) ':');
+            putByte((byte) ' ');
+        }
+        putString(action);
+        put(LINE_SEPARATOR);
+    }
+    
+    private void writeTimestampPrefix(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000L);
+        if (second != cachedSecond) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone);
+            timestampPrefix[0] = '[';
+            digits(timestampPrefix, 1, time.getYear(), 4);
+            timestampPrefix[5] = '-';
+            digits(timestampPrefix, 6, time.getMonthValue(), 2);
+            timestampPrefix[8] = '-';
+            digits(timestampPrefix, 9, time.getDayOfMonth(), 2);
+            timestampPrefix[11] = ' ';
+            digits(timestampPrefix, 12, time.getHour(), 2);
+            timestampPrefix[14] = ':';
+            digits(timestampPrefix, 15, time.getMinute(), 2);
+            timestampPrefix[17] = ':';
+            digits(timestampPrefix, 18, time.getSecond(), 2);
+            timestampPrefix[20] = ']';
+            timestampPrefix[21] = ' ';
+            cachedSecond = second;
+        }
+        put(timestampPrefix);
+    }
+    
+    private static void digits(byte[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+    
+    private void putInt(int value) {
+        if (value == Integer.MIN_VALUE) {
+            putString(Integer.toString(value));
+            return;
+        }
+        if (value < 0) {
+            putByte((byte) '-');
+            value = -value;
+        }
+        int digitCount = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digitCount++;
+        }
+        ensureCapacity(digitCount);
+        digits(buffer, length, value, digitCount);
+        length += digitCount;
+    }
+    
+    // UTF-8 without going through getBytes(); unpaired surrogates become '?' like String.getBytes does
+    private void putString(String value) {
+        if (value == null) {
+            put(NULL);
+            return;
+        }
+        int count = value.length();
+        ensureCapacity(count * 3);
+        byte[] target = buffer;
+        int position = length;
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                target[position++] = (byte) c;
+            } else if (c < 0x800) {
+                target[position++] = (byte) (0xC0 | (c >> 6));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                target[position++] = (byte) (0xF0 | (codePoint >> 18));
+                target[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                target[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                target[position++] = '?';
+            } else {
+                target[position++] = (byte) (0xE0 | (c >> 12));
+                target[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = position;
+    }
+    
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+    
+    private void putByte(byte value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+}
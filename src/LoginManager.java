@@ -3,11 +3,16 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LoginManager {
     private DataManager dataManager;
     private Scanner scanner;
     private CompletableFuture<Void> dataLoadingFuture;
+    private final LongAdder loginAttempts = Metrics.getInstance().counter("beehive_login_attempts_total", "Login attempts");
+    private final LongAdder loginFailures = Metrics.getInstance().counter("beehive_login_failures_total", "Login attempts with a wrong email or password");
+    private final LatencyHistogram authenticationTimer = Metrics.getInstance().timer("beehive_login_authentication_seconds",
+                                                                                     "Time to look up and check a user's credentials");
     
     public LoginManager() {
         this.dataManager = DataManager.getInstance();
@@ -63,10 +68,15 @@ public class LoginManager {
     }
     
     private User authenticateUser(String email, String password) {
+        long start = System.nanoTime();
+        loginAttempts.increment();
         User user = dataManager.getUserByEmail(email);
-        if (user != null && user.authenticate(password)) {
+        boolean authenticated = user != null && user.authenticate(password);
+        authenticationTimer.recordSince(start);
+        if (authenticated) {
             return user;
         }
+        loginFailures.increment();
         return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process-wide registry of counters, gauges and histograms. Components register their metrics once
+// and update them on their hot paths; the admin menu and the Prometheus dump read them on demand.
+// Names follow Prometheus conventions: timers end in _seconds, counters in _total.
+public class Metrics {
+    private static Metrics instance = null;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    
+    private enum Kind { COUNTER, GAUGE, TIMER, HISTOGRAM }
+    
+    private static class Metric {
+        final Kind kind;
+        final String help;
+        final LongSupplier value;
+        final LongAdder adder;
+        final LatencyHistogram histogram;
+        
+        Metric(Kind kind, String help, LongSupplier value, LongAdder adder, LatencyHistogram histogram) {
+            this.kind = kind;
+            this.help = help;
+            this.value = value;
+            this.adder = adder;
+            this.histogram = histogram;
+        }
+    }
+    
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    
+    private Metrics() {
+    }
+    
+    public static synchronized Metrics getInstance() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+        return instance;
+    }
+    
+    // Registering a name again returns the metric registered first
+    public LongAdder counter(String name, String help) {
+        Metric metric = metrics.computeIfAbsent(name, key -> {
+            LongAdder adder = new LongAdder();
+            return new Metric(Kind.COUNTER, help, adder::sum, adder, null);
+        });
+        if (metric.adder == null) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered with another type");
+        }
+        return metric.adder;
+    }
+    
+    // A counter kept elsewhere, e.g. in LogCounters
+    public void counter(String name, String help, LongSupplier value) {
+        metrics.put(name, new Metric(Kind.COUNTER, help, value, null, null));
+    }
+    
+    public void gauge(String name, String help, LongSupplier value) {
+        metrics.put(name, new Metric(Kind.GAUGE, help, value, null, null));
+    }
+    
+    // Records nanoseconds, reported in seconds
+    public LatencyHistogram timer(String name, String help) {
+        return histogram(Kind.TIMER, name, help);
+    }
+    
+    // Records plain values such as bytes or entity counts
+    public LatencyHistogram histogram(String name, String help) {
+        return histogram(Kind.HISTOGRAM, name, help);
+    }
+    
+    private LatencyHistogram histogram(Kind kind, String name, String help) {
+        Metric metric = metrics.computeIfAbsent(name, key -> new Metric(kind, help, null, null, new LatencyHistogram()));
+        if (metric.kind != kind) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered with another type");
+        }
+        return metric.histogram;
+    }
+    
+    // One line per metric for the admin menu
+    public String describe() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            Metric metric = entry.getValue();
+            out.append(entry.getKey()).append(": ");
+            if (metric.histogram == null) {
+                out.append(metric.value.getAsLong());
+            } else {
+                LatencyHistogram histogram = metric.histogram;
+                out.append("count ").append(histogram.getCount());
+                if (histogram.getCount() > 0) {
+                    out.append(", mean ").append(readable(metric.kind, histogram.getMean()))
+                       .append(", p50 ").append(readable(metric.kind, histogram.getPercentile(0.5)))
+                       .append(", p99 ").append(readable(metric.kind, histogram.getPercentile(0.99)))
+                       .append(", max ").append(readable(metric.kind, histogram.getMax()));
+                }
+            }
+            out.append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+    
+    // Prometheus text exposition format; histograms are written as summaries with fixed quantiles
+    public void writePrometheus(Writer writer) throws IOException {
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            Metric metric = entry.getValue();
+            writer.write("# HELP " + name + " " + metric.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            switch (metric.kind) {
+                case COUNTER:
+                case GAUGE:
+                    writer.write("# TYPE " + name + " " + metric.kind.name().toLowerCase(Locale.ROOT) + "\n");
+                    writer.write(name + " " + metric.value.getAsLong() + "\n");
+                    break;
+                default:
+                    LatencyHistogram histogram = metric.histogram;
+                    double divisor = metric.kind == Kind.TIMER ? 1e9 : 1;
+                    writer.write("# TYPE " + name + " summary\n");
+                    for (double quantile : QUANTILES) {
+                        writer.write(name + "{quantile=\"" + quantile + "\"} " + number(histogram.getPercentile(quantile) / divisor) + "\n");
+                    }
+                    writer.write(name + "_sum " + number(histogram.getSum() / divisor) + "\n");
+                    writer.write(name + "_count " + histogram.getCount() + "\n");
+            }
+        }
+    }
+    
+    // Written to a temp file first so a scraper never reads half a dump
+    public void dumpPrometheus(String path) throws IOException {
+        File temp = new File(path + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writePrometheus(writer);
+        }
+        Files.move(temp.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static String readable(Kind kind, double value) {
+        if (kind != Kind.TIMER) {
+            return String.format(Locale.ROOT, "%.0f", value);
+        }
+        if (value >= 1e9) {
+            return String.format(Locale.ROOT, "%.2f s", value / 1e9);
+        }
+        if (value >= 1e6) {
+            return String.format(Locale.ROOT, "%.2f ms", value / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.2f us", value / 1e3);
+    }
+    
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -0,0 +1,286 @@
+import java.util.*;
+
+// Immutable map from int keys to values. Updates return a new map that shares every untouched node
+// with the old one, so a published map can be read by any number of threads without locking.
+// Keys are stored in a 32-way trie, most significant digit first, so iteration is in ascending unsigned
+// key order: non-negative keys in ascending order, then negative ones such as -1 last.
+public final class PersistentIntMap<V> extends AbstractMap<Integer, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_SHIFT = 30;
+    
+    private static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<>(null, 0, 0);
+    
+    // A node holds up to 32 slots, only the ones whose bit is set in the bitmap are allocated.
+    // Slots are child nodes, or values on the lowest level.
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+        
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+    
+    private final Node root;
+    private final int rootShift;
+    private final int size;
+    
+    private PersistentIntMap(Node root, int rootShift, int size) {
+        this.root = root;
+        this.rootShift = rootShift;
+        this.size = size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+    
+    public static <V> PersistentIntMap<V> copyOf(Map<Integer, V> map) {
+        PersistentIntMap<V> result = empty();
+        for (Map.Entry<Integer, V> entry : map.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (root == null || !fits(key, rootShift)) {
+            return null;
+        }
+        Node node = root;
+        int shift = rootShift;
+        while (true) {
+            int bit = 1 << ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) {
+                return (V) slot;
+            }
+            node = (Node) slot;
+            shift -= BITS;
+        }
+    }
+    
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+    
+    // The last key in iteration order, found by following the highest slot on every level.
+    // That is the largest key only while no key is negative.
+    public int lastKey() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node node = root;
+        int key = 0;
+        for (int shift = rootShift; ; shift -= BITS) {
+            int digit = 31 - Integer.numberOfLeadingZeros(node.bitmap);
+            key |= digit << shift;
+            if (shift == 0) {
+                return key;
+            }
+            node = (Node) node.slots[node.slots.length - 1];
+        }
+    }
+    
+    // Values may not be null, the same as in ConcurrentHashMap
+    public PersistentIntMap<V> plus(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        V existing = get(key);
+        if (existing == value) {
+            return this;
+        }
+        
+        Node newRoot = root;
+        int shift = root != null ? rootShift : 0;
+        while (!fits(key, shift)) {
+            // Every existing key is below the new range, so the old root becomes the first child
+            newRoot = newRoot != null ? new Node(1, new Object[] {newRoot}) : null;
+            shift += BITS;
+        }
+        newRoot = insert(newRoot, shift, key, value);
+        return new PersistentIntMap<>(newRoot, shift, existing == null ? size + 1 : size);
+    }
+    
+    public PersistentIntMap<V> minus(int key) {
+        if (get(key) == null) {
+            return this;
+        }
+        Node newRoot = remove(root, rootShift, key);
+        return newRoot != null ? new PersistentIntMap<>(newRoot, rootShift, size - 1) : PersistentIntMap.<V>empty();
+    }
+    
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            @Override
+            public Iterator<Map.Entry<Integer, V>> iterator() {
+                return new Cursor<Map.Entry<Integer, V>>() {
+                    @Override
+                    Map.Entry<Integer, V> current(int key, V value) {
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Cursor<V>() {
+                    @Override
+                    V current(int key, V value) {
+                        return value;
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    private static boolean fits(int key, int shift) {
+        return shift >= MAX_SHIFT || (key >>> (shift + BITS)) == 0;
+    }
+    
+    private static Node insert(Node node, int shift, int key, Object value) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        if (node == null) {
+            return new Node(bit, new Object[] {shift == 0 ? value : insert(null, shift - BITS, key, value)});
+        }
+        
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) != 0) {
+            Object[] slots = node.slots.clone();
+            slots[index] = shift == 0 ? value : insert((Node) slots[index], shift - BITS, key, value);
+            return new Node(node.bitmap, slots);
+        }
+        
+        Object[] slots = new Object[node.slots.length + 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        slots[index] = shift == 0 ? value : insert(null, shift - BITS, key, value);
+        System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+        return new Node(node.bitmap | bit, slots);
+    }
+    
+    // Caller checks that the key is present; returns null when the node becomes empty
+    private static Node remove(Node node, int shift, int key) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if (shift > 0) {
+            Node child = remove((Node) node.slots[index], shift - BITS, key);
+            if (child != null) {
+                Object[] slots = node.slots.clone();
+                slots[index] = child;
+                return new Node(node.bitmap, slots);
+            }
+        }
+        
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+    
+    // Depth-first walk over the trie that keeps one slot position and key prefix per level
+    private abstract class Cursor<T> implements Iterator<T> {
+        private final Node[] nodes = new Node[MAX_SHIFT / BITS + 1];
+        private final int[] positions = new int[nodes.length];
+        private final int[] prefixes = new int[nodes.length];
+        private int depth = -1;
+        private int remaining = size;
+        
+        Cursor() {
+            if (root != null) {
+                depth = 0;
+                nodes[0] = root;
+            }
+        }
+        
+        abstract T current(int key, V value);
+        
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            while (true) {
+                Node node = nodes[depth];
+                int position = positions[depth];
+                if (position == node.slots.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth]++;
+                
+                int shift = rootShift - depth * BITS;
+                int digit = digitAt(node.bitmap, position);
+                int key = prefixes[depth] | (digit << shift);
+                if (shift == 0) {
+                    remaining--;
+                    return current(key, (V) node.slots[position]);
+                }
+                depth++;
+                nodes[depth] = (Node) node.slots[position];
+                positions[depth] = 0;
+                prefixes[depth] = key;
+            }
+        }
+    }
+    
+    // The digit of the n-th set bit in the bitmap
+    private static int digitAt(int bitmap, int n) {
+        for (int i = 0; i < n; i++) {
+            bitmap &= bitmap - 1;
+        }
+        return Integer.numberOfTrailingZeros(bitmap);
+    }
+}
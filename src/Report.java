@@ -1,8 +1,9 @@
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.List;
-import java.util.ArrayList;
 
 public class Report implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -11,6 +12,7 @@ public class Report implements Serializable {
     private int userId;
     private String userName;
     private String content;
+    // Always IntLists; declared as List so reports serialized with ArrayLists still load
     private List<Integer> relatedHiveIds;
     private List<Integer> relatedTaskIds;
     private String timestamp; // Changed from LocalDateTime to String for serialization
@@ -20,8 +22,8 @@ public class Report implements Serializable {
         this.userId = userId;
         this.userName = userName;
         this.content = content;
-        this.relatedHiveIds = relatedHiveIds != null ? relatedHiveIds : new ArrayList<>();
-        this.relatedTaskIds = relatedTaskIds != null ? relatedTaskIds : new ArrayList<>();
+        this.relatedHiveIds = relatedHiveIds != null ? IntList.from(relatedHiveIds) : new IntList();
+        this.relatedTaskIds = relatedTaskIds != null ? IntList.from(relatedTaskIds) : new IntList();
         this.timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
     }
     
@@ -30,12 +32,19 @@ public class Report implements Serializable {
     public int getUserId() { return userId; }
     public String getUserName() { return userName; }
     public String getContent() { return content; }
-    public List<Integer> getRelatedHiveIds() { return relatedHiveIds; }
-    public List<Integer> getRelatedTaskIds() { return relatedTaskIds; }
+    public IntList getRelatedHiveIds() { return (IntList) relatedHiveIds; }
+    public IntList getRelatedTaskIds() { return (IntList) relatedTaskIds; }
     public String getTimestamp() { return timestamp; } // Return as String
     
     // Setters
     public void setContent(String content) { this.content = content; }
-    public void setRelatedHiveIds(List<Integer> relatedHiveIds) { this.relatedHiveIds = relatedHiveIds; }
-    public void setRelatedTaskIds(List<Integer> relatedTaskIds) { this.relatedTaskIds = relatedTaskIds; }
+    public void setRelatedHiveIds(List<Integer> relatedHiveIds) { this.relatedHiveIds = IntList.from(relatedHiveIds); }
+    public void setRelatedTaskIds(List<Integer> relatedTaskIds) { this.relatedTaskIds = IntList.from(relatedTaskIds); }
+    public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        relatedHiveIds = relatedHiveIds != null ? IntList.from(relatedHiveIds) : new IntList();
+        relatedTaskIds = relatedTaskIds != null ? IntList.from(relatedTaskIds) : new IntList();
+    }
 }
\ No newline at end of file
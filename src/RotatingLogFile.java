@@ -0,0 +1,226 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+// The active log file, appended to through one long-lived channel. When it grows past the size limit
+// or a new day starts it is renamed to the next numbered segment (activity_log.1.txt, ...), which is
+// then compressed and pruned on a background thread. All sessions share the file: every append runs
+// under the file lock and reopens the file if another session rotated it in the meantime.
+public class RotatingLogFile {
+    private final Path path;
+    private final String baseName;
+    private final String extension;
+    private final Pattern segmentPattern;
+    private final long maxBytes;
+    private final boolean rotateDaily;
+    private final boolean compress;
+    private final int maxSegments;
+    private final int maxAgeDays;
+    
+    private FileChannel channel;
+    private Object fileKey;
+    private LocalDate fileDay;
+    private long retryRotationAt;
+    private ExecutorService compressor;
+    
+    public RotatingLogFile(String fileName, long maxBytes, boolean rotateDaily, boolean compress,
+                           int maxSegments, int maxAgeDays) {
+        this.path = Paths.get(fileName).toAbsolutePath();
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        this.baseName = dot > 0 ? name.substring(0, dot) : name;
+        this.extension = dot > 0 ? name.substring(dot) : "";
+        this.segmentPattern = Pattern.compile(Pattern.quote(baseName) + "\\.(\\d+)" + Pattern.quote(extension) + "(\\.gz)?");
+        this.maxBytes = maxBytes;
+        this.rotateDaily = rotateDaily;
+        this.compress = compress;
+        this.maxSegments = maxSegments;
+        this.maxAgeDays = maxAgeDays;
+    }
+    
+    public synchronized void append(byte[] bytes, int offset, int length) throws IOException {
+        while (true) {
+            FileChannel current = open();
+            FileLock fileLock = FileLocks.lock(current);
+            boolean rotated = false;
+            try {
+                if (!isCurrent()) {
+                    // Another session rotated the file while we waited for the lock
+                    closeChannel();
+                    continue;
+                }
+                long size = current.size();
+                if (size > 0 && needsRotation(size, length)) {
+                    rotated = rotate();
+                    if (rotated) {
+                        continue;
+                    }
+                }
+                
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                long position = size;
+                while (buffer.hasRemaining()) {
+                    position += current.write(buffer, position);
+                }
+                return;
+            } finally {
+                if (current.isOpen()) {
+                    fileLock.release();
+                }
+                if (rotated) {
+                    closeChannel();
+                }
+            }
+        }
+    }
+    
+    public synchronized void close() {
+        closeChannel();
+        if (compressor != null) {
+            compressor.shutdown();
+        }
+    }
+    
+    private FileChannel open() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            fileKey = attributes.fileKey();
+            fileDay = attributes.size() > 0
+                ? attributes.lastModifiedTime().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()
+                : LocalDate.now();
+        }
+        return channel;
+    }
+    
+    private boolean isCurrent() {
+        try {
+            Object currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return fileKey == null || fileKey.equals(currentKey);
+        } catch (IOException e) {
+            // The file was renamed and not recreated yet
+            return false;
+        }
+    }
+    
+    private boolean needsRotation(long size, int length) {
+        if (System.currentTimeMillis() < retryRotationAt) {
+            return false;
+        }
+        if (maxBytes > 0 && size + length > maxBytes) {
+            return true;
+        }
+        return rotateDaily && !LocalDate.now().equals(fileDay);
+    }
+    
+    // Caller holds the file lock. Returns false if the file could not be renamed, e.g. because the
+    // platform does not allow renaming open files; logging then simply continues in the same file.
+    private boolean rotate() {
+        try {
+            Path segment = path.resolveSibling(baseName + "." + (lastSegmentNumber() + 1) + extension);
+            Files.move(path, segment, StandardCopyOption.ATOMIC_MOVE);
+            compressAndPrune(segment);
+            return true;
+        } catch (IOException e) {
+            retryRotationAt = System.currentTimeMillis() + 60_000;
+            return false;
+        }
+    }
+    
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The channel is discarded either way
+            }
+            channel = null;
+        }
+    }
+    
+    private int lastSegmentNumber() throws IOException {
+        int last = 0;
+        for (Path segment : listSegments()) {
+            last = Math.max(last, segmentNumber(segment));
+        }
+        return last;
+    }
+    
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path.getParent(), baseName + ".*")) {
+            for (Path candidate : stream) {
+                if (segmentPattern.matcher(candidate.getFileName().toString()).matches()) {
+                    segments.add(candidate);
+                }
+            }
+        }
+        segments.sort((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+    
+    private int segmentNumber(Path segment) {
+        Matcher matcher = segmentPattern.matcher(segment.getFileName().toString());
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+    
+    private void compressAndPrune(Path segment) {
+        if (compressor == null) {
+            compressor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "activity-log-compressor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compressor.execute(() -> {
+            if (compress) {
+                compressSegment(segment);
+            }
+            pruneSegments();
+        });
+    }
+    
+    // Writes to a temp file first so a crash never leaves a truncated .gz next to a deleted segment
+    private void compressSegment(Path segment) {
+        Path compressed = segment.resolveSibling(segment.getFileName() + ".gz");
+        Path temp = segment.resolveSibling(segment.getFileName() + ".gz.tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), 1 << 16)) {
+                Files.copy(segment, out);
+            }
+            Files.move(temp, compressed, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+        } catch (IOException e) {
+            // The segment stays uncompressed
+            temp.toFile().delete();
+        }
+    }
+    
+    private void pruneSegments() {
+        try {
+            List<Path> segments = listSegments();
+            long oldestAllowed = maxAgeDays > 0 ? System.currentTimeMillis() - maxAgeDays * 24L * 60 * 60 * 1000 : Long.MIN_VALUE;
+            for (int i = 0; i < segments.size(); i++) {
+                Path segment = segments.get(i);
+                boolean tooMany = maxSegments > 0 && segments.size() - i > maxSegments;
+                if (tooMany || Files.getLastModifiedTime(segment).toMillis() < oldestAllowed) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+        } catch (IOException e) {
+            // Pruned again after the next rotation
+        }
+    }
+}
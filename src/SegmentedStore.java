@@ -0,0 +1,195 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// Stores each entity type in its own segment file. A small manifest in the data file names the
+// current segment of every type, so a checkpoint rewrites only changed segments and publishes
+// all of them at once by atomically replacing the manifest.
+public class SegmentedStore {
+    public static final int MANIFEST_MAGIC = 0x424D414E; // "BMAN"
+    private static final int SEGMENT_MAGIC = 0x42534547; // "BSEG"
+    private static final int FORMAT_VERSION = 1;
+    
+    public static final byte[] ENTITIES = {
+        WriteAheadLog.ENTITY_HIVE, WriteAheadLog.ENTITY_TASK, WriteAheadLog.ENTITY_USER, WriteAheadLog.ENTITY_REPORT
+    };
+    
+    // Segment generations are indexed by entity code; -1 means no segment written yet
+    public static class Manifest {
+        private final long generation;
+        private final long[] segmentGenerations;
+        
+        public Manifest(long generation, long[] segmentGenerations) {
+            this.generation = generation;
+            this.segmentGenerations = segmentGenerations;
+        }
+        
+        public long getGeneration() { return generation; }
+        public long getSegmentGeneration(byte entity) { return segmentGenerations[entity]; }
+    }
+    
+    private final String manifestPath;
+    private final String segmentPrefix;
+    
+    public SegmentedStore(String manifestPath) {
+        this.manifestPath = manifestPath;
+        this.segmentPrefix = manifestPath.endsWith(".dat")
+            ? manifestPath.substring(0, manifestPath.length() - 4) : manifestPath;
+    }
+    
+    public static long[] emptySegmentGenerations() {
+        long[] generations = new long[WriteAheadLog.ENTITY_REPORT + 1];
+        java.util.Arrays.fill(generations, -1);
+        return generations;
+    }
+    
+    public static String entityName(byte entity) {
+        switch (entity) {
+            case WriteAheadLog.ENTITY_HIVE:
+                return "hives";
+            case WriteAheadLog.ENTITY_TASK:
+                return "tasks";
+            case WriteAheadLog.ENTITY_USER:
+                return "users";
+            case WriteAheadLog.ENTITY_REPORT:
+                return "reports";
+            default:
+                return "unknown";
+        }
+    }
+    
+    public File segmentFile(byte entity, long segmentGeneration) {
+        return new File(segmentPrefix + "." + entityName(entity) + "." + segmentGeneration + ".seg");
+    }
+    
+    public Manifest readManifest(DataInputStream in) throws IOException {
+        if (in.readInt() != MANIFEST_MAGIC) {
+            throw new IOException("Not a manifest file");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported manifest version: " + version);
+        }
+        long generation = in.readLong();
+        long[] segmentGenerations = emptySegmentGenerations();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte entity = in.readByte();
+            long segmentGeneration = in.readLong();
+            if (entity > 0 && entity < segmentGenerations.length) {
+                segmentGenerations[entity] = segmentGeneration;
+            }
+        }
+        return new Manifest(generation, segmentGenerations);
+    }
+    
+    // Replaces the manifest atomically; segments it names must already be written
+    public void publishManifest(Manifest manifest, boolean force) throws IOException {
+        File temp = new File(manifestPath + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(manifest.generation);
+            out.writeInt(ENTITIES.length);
+            for (byte entity : ENTITIES) {
+                out.writeByte(entity);
+                out.writeLong(manifest.segmentGenerations[entity]);
+            }
+            out.flush();
+            if (force) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp.toPath(), Paths.get(manifestPath), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (force) {
+            syncDirectory();
+        }
+    }
+    
+    // Segment files get a fresh name per generation, so nobody reads one before the manifest points at it
+    public void writeSegment(byte entity, long segmentGeneration, Collection<?> values, boolean force) throws IOException {
+        File file = segmentFile(entity, segmentGeneration);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeByte(entity);
+            out.writeLong(segmentGeneration);
+            out.writeInt(values.size());
+            for (Object value : values) {
+                BinaryCodec.writeEntity(out, entity, value);
+            }
+            out.flush();
+            if (force) {
+                channel.force(true);
+            }
+        }
+    }
+    
+    public List<Object> readSegment(byte entity, long segmentGeneration, IntFunction<Task> taskLookup,
+                                    IntFunction<Hive> hiveLookup) throws IOException {
+        File file = segmentFile(entity, segmentGeneration);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != SEGMENT_MAGIC || in.readInt() != FORMAT_VERSION || in.readByte() != entity
+                    || in.readLong() != segmentGeneration) {
+                throw new IOException("Corrupt segment file: " + file.getName());
+            }
+            int count = in.readInt();
+            List<Object> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(BinaryCodec.readEntity(in, entity, taskLookup, hiveLookup));
+            }
+            return values;
+        }
+    }
+    
+    public void deleteSegment(byte entity, long segmentGeneration) {
+        if (segmentGeneration >= 0) {
+            segmentFile(entity, segmentGeneration).delete();
+        }
+    }
+    
+    // Removes every segment file of this store that the given generations do not name
+    public void deleteStaleSegments(long[] segmentGenerations) {
+        File prefix = new File(segmentPrefix).getAbsoluteFile();
+        File[] files = prefix.getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(prefix.getName() + ".") || !name.endsWith(".seg")) {
+                continue;
+            }
+            boolean current = false;
+            for (byte entity : ENTITIES) {
+                if (segmentGenerations[entity] >= 0 && name.equals(segmentFile(entity, segmentGenerations[entity]).getName())) {
+                    current = true;
+                }
+            }
+            if (!current) {
+                file.delete();
+            }
+        }
+    }
+    
+    private void syncDirectory() {
+        File directory = new File(manifestPath).getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform allows opening a directory; the files themselves were already forced
+        }
+    }
+}
@@ -0,0 +1,462 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Binary activity log written next to the text log. Entries are collected into blocks of fixed-size
+// records that point into a per-block string table; every block gets an entry in a separate index
+// file with its time range and the users that appear in it. Queries read the small index and then
+// memory-map only the blocks that can contain matching entries.
+//
+// Block:       magic, record count, string count, records, string offsets, string bytes
+// Record:      timestamp (epoch millis), user ID, user name, action, detail (string numbers, -1 = none)
+// Index entry: length, block offset, block length, min time, max time, record count, user IDs, crc
+public class StructuredActivityLog {
+    public static final int SYSTEM_USER_ID = -1;
+    
+    private static final int BLOCK_MAGIC = 0x424C424B; // "BLBK"
+    private static final int BLOCK_HEADER_SIZE = 12;
+    private static final int RECORD_SIZE = 24;
+    private static final int NO_STRING = -1;
+    static final int MAX_BLOCK_RECORDS = 4096;
+    
+    // One log entry as returned by queries; the action is split into a code and detail at " - "
+    public static class Entry {
+        private final long timestamp;
+        private final int userId;
+        private final String userName;
+        private final String action;
+        private final String detail;
+        
+        Entry(long timestamp, int userId, String userName, String action, String detail) {
+            this.timestamp = timestamp;
+            this.userId = userId;
+            this.userName = userName;
+            this.action = action;
+            this.detail = detail;
+        }
+        
+        public long getTimestamp() { return timestamp; }
+        public int getUserId() { return userId; }
+        public String getUserName() { return userName; }
+        public String getAction() { return action; }
+        public String getDetail() { return detail; }
+        
+        public String getFullAction() {
+            return detail != null ? action + " - " + detail : action;
+        }
+    }
+    
+    // Index entry of one block, kept in memory by readers
+    private static class BlockInfo {
+        final long offset;
+        final int length;
+        final long minTime;
+        final long maxTime;
+        final int[] userIds;
+        
+        BlockInfo(long offset, int length, long minTime, long maxTime, int[] userIds) {
+            this.offset = offset;
+            this.length = length;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.userIds = userIds;
+        }
+    }
+    
+    private final File dataFile;
+    private final File indexFile;
+    // Entries that could not be buffered are counted here as dropped, when set
+    private final LogCounters counters;
+    
+    // Block being filled: records plus the strings they reference, each stored once
+    private ByteBuffer records = ByteBuffer.allocate(MAX_BLOCK_RECORDS * RECORD_SIZE);
+    private final Map<String, Integer> stringNumbers = new HashMap<>();
+    private final List<byte[]> strings = new ArrayList<>();
+    private int stringBytes;
+    private final Set<Integer> blockUsers = new TreeSet<>();
+    private long blockMinTime = Long.MAX_VALUE;
+    private long blockMaxTime = Long.MIN_VALUE;
+    
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    
+    // Readers cache the parsed index and a posting list of block numbers per user
+    private final List<BlockInfo> blocks = new ArrayList<>();
+    private final Map<Integer, List<Integer>> blocksByUser = new HashMap<>();
+    private long indexParsedTo;
+    private int indexedBlockCount;
+    
+    public StructuredActivityLog(String dataPath) {
+        this(dataPath, null);
+    }
+    
+    public StructuredActivityLog(String dataPath, LogCounters counters) {
+        this.dataFile = new File(dataPath);
+        this.indexFile = new File(dataPath + ".idx");
+        this.counters = counters;
+    }
+    
+    // Writes the current block every interval and when the application exits
+    public void startBackgroundFlush(long intervalMillis) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "structured-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "structured-log-shutdown"));
+    }
+    
+    // Never throws: callers are the menus and the background log writer, and the text log is the primary record.
+    // While the block cannot be written and is full, new entries are dropped and counted.
+    public synchronized void append(long timestamp, int userId, String userName, String action) {
+        try {
+            if (!records.hasRemaining()) {
+                flushQuietly();
+                if (!records.hasRemaining()) {
+                    recordDropped();
+                    return;
+                }
+            }
+            
+            String code = action;
+            String detail = null;
+            int separator = action != null ? action.indexOf(" - ") : -1;
+            if (separator >= 0) {
+                code = action.substring(0, separator);
+                detail = action.substring(separator + 3);
+            }
+        
+            records.putLong(timestamp);
+            records.putInt(userId);
+            records.putInt(intern(userName));
+            records.putInt(intern(code));
+            records.putInt(intern(detail));
+            blockUsers.add(userId);
+            blockMinTime = Math.min(blockMinTime, timestamp);
+            blockMaxTime = Math.max(blockMaxTime, timestamp);
+        
+            if (!records.hasRemaining()) {
+                flushQuietly();
+            }
+        } catch (RuntimeException e) {
+            recordDropped();
+        }
+    }
+    
+    @SuppressWarnings("try")
+    public synchronized void flush() throws IOException {
+        if (records.position() == 0) {
+            return;
+        }
+        ByteBuffer block = encodeBlock();
+        
+        FileChannel data = openForWriting();
+        try (FileLock fileLock = FileLocks.lock(data)) {
+            long offset = data.size();
+            long indexStart = indexChannel.size();
+            try {
+                long position = offset;
+                while (block.hasRemaining()) {
+                    position += data.write(block, position);
+                }
+                ByteBuffer indexEntry = encodeIndexEntry(offset, (int) (position - offset));
+                long indexPosition = indexStart;
+                while (indexEntry.hasRemaining()) {
+                    indexPosition += indexChannel.write(indexEntry, indexPosition);
+                }
+            } catch (IOException e) {
+                // The block stays in memory for the next flush, so take back whatever part of it was written.
+                // A torn index entry would also hide every entry written after it.
+                try {
+                    data.truncate(offset);
+                    indexChannel.truncate(indexStart);
+                } catch (IOException truncateError) {
+                    e.addSuppressed(truncateError);
+                }
+                throw e;
+            }
+        }
+        resetBlock();
+    }
+    
+    // Entries of one user (or of everyone when userId is null) with from <= timestamp < to, oldest first
+    public List<Entry> query(Integer userId, long fromMillis, long toMillis) throws IOException {
+        flush();
+        List<Entry> result = new ArrayList<>();
+        if (!dataFile.exists()) {
+            return result;
+        }
+        
+        synchronized (this) {
+            refreshIndex();
+            List<Integer> candidates = userId != null
+                ? blocksByUser.getOrDefault(userId, Collections.<Integer>emptyList())
+                : allBlockNumbers();
+            
+            try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+                for (int blockNumber : candidates) {
+                    BlockInfo block = blocks.get(blockNumber);
+                    if (block.maxTime < fromMillis || block.minTime >= toMillis) {
+                        continue;
+                    }
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, block.offset, block.length);
+                    readBlock(mapped, userId, fromMillis, toMillis, result);
+                }
+            }
+        }
+        // Blocks of different sessions overlap in time
+        result.sort(Comparator.comparingLong(Entry::getTimestamp));
+        return result;
+    }
+    
+    private int intern(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer number = stringNumbers.get(value);
+        if (number == null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            number = strings.size();
+            strings.add(bytes);
+            stringNumbers.put(value, number);
+            stringBytes += bytes.length;
+        }
+        return number;
+    }
+    
+    private ByteBuffer encodeBlock() {
+        int recordCount = records.position() / RECORD_SIZE;
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + records.position() + (strings.size() + 1) * 4 + stringBytes);
+        block.putInt(BLOCK_MAGIC);
+        block.putInt(recordCount);
+        block.putInt(strings.size());
+        block.put(records.array(), 0, records.position());
+        int offset = 0;
+        for (byte[] string : strings) {
+            block.putInt(offset);
+            offset += string.length;
+        }
+        block.putInt(offset);
+        for (byte[] string : strings) {
+            block.put(string);
+        }
+        block.flip();
+        return block;
+    }
+    
+    private ByteBuffer encodeIndexEntry(long offset, int length) {
+        int size = 4 + 8 + 4 + 8 + 8 + 4 + 4 + blockUsers.size() * 4 + 8;
+        ByteBuffer entry = ByteBuffer.allocate(size);
+        entry.putInt(size);
+        entry.putLong(offset);
+        entry.putInt(length);
+        entry.putLong(blockMinTime);
+        entry.putLong(blockMaxTime);
+        entry.putInt(records.position() / RECORD_SIZE);
+        entry.putInt(blockUsers.size());
+        for (int user : blockUsers) {
+            entry.putInt(user);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), 0, entry.position());
+        entry.putLong(crc.getValue());
+        entry.flip();
+        return entry;
+    }
+    
+    private void resetBlock() {
+        records.clear();
+        stringNumbers.clear();
+        strings.clear();
+        stringBytes = 0;
+        blockUsers.clear();
+        blockMinTime = Long.MAX_VALUE;
+        blockMaxTime = Long.MIN_VALUE;
+    }
+    
+    // The first writer after a crash drops a torn index entry so later entries stay readable
+    @SuppressWarnings("try")
+    private FileChannel openForWriting() throws IOException {
+        if (dataChannel == null) {
+            // Both channels are kept only once both are open, so a failed open is simply retried by the next flush
+            FileChannel data = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel index;
+            try {
+                index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                data.close();
+                throw e;
+            }
+            dataChannel = data;
+            indexChannel = index;
+            try (FileLock fileLock = FileLocks.lock(dataChannel)) {
+                long validEnd = scanIndex(indexChannel, 0, null);
+                if (validEnd < indexChannel.size()) {
+                    indexChannel.truncate(validEnd);
+                }
+            }
+        }
+        return dataChannel;
+    }
+    
+    private void refreshIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            indexParsedTo = scanIndex(channel, indexParsedTo, blocks);
+        }
+        for (int i = indexedBlockCount; i < blocks.size(); i++) {
+            for (int user : blocks.get(i).userIds) {
+                blocksByUser.computeIfAbsent(user, key -> new ArrayList<>()).add(i);
+            }
+        }
+        indexedBlockCount = blocks.size();
+    }
+    
+    // Reads index entries from the given position and returns the end of the last intact one
+    private static long scanIndex(FileChannel channel, long position, List<BlockInfo> into) throws IOException {
+        long size = channel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            channel.read(lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length < 48 || position + length > size) {
+                break;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(length);
+            while (entry.hasRemaining()) {
+                if (channel.read(entry, position + entry.position()) < 0) {
+                    return position;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(entry.array(), 0, length - 8);
+            if (entry.getLong(length - 8) != crc.getValue()) {
+                break;
+            }
+            
+            if (into != null) {
+                entry.position(4);
+                long offset = entry.getLong();
+                int blockLength = entry.getInt();
+                long minTime = entry.getLong();
+                long maxTime = entry.getLong();
+                entry.getInt();
+                int[] userIds = new int[entry.getInt()];
+                for (int i = 0; i < userIds.length; i++) {
+                    userIds[i] = entry.getInt();
+                }
+                into.add(new BlockInfo(offset, blockLength, minTime, maxTime, userIds));
+            }
+            position += length;
+        }
+        return position;
+    }
+    
+    private List<Integer> allBlockNumbers() {
+        List<Integer> numbers = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+    
+    // Checks the fixed-size records first and decodes strings only for matching ones
+    private static void readBlock(ByteBuffer block, Integer userId, long fromMillis, long toMillis, List<Entry> into) throws IOException {
+        if (block.getInt(0) != BLOCK_MAGIC) {
+            throw new IOException("Corrupt structured log block");
+        }
+        int recordCount = block.getInt(4);
+        int stringCount = block.getInt(8);
+        int offsetsStart = BLOCK_HEADER_SIZE + recordCount * RECORD_SIZE;
+        int bytesStart = offsetsStart + (stringCount + 1) * 4;
+        String[] decoded = new String[stringCount];
+        
+        for (int i = 0; i < recordCount; i++) {
+            int record = BLOCK_HEADER_SIZE + i * RECORD_SIZE;
+            long timestamp = block.getLong(record);
+            int user = block.getInt(record + 8);
+            if (timestamp < fromMillis || timestamp >= toMillis || (userId != null && user != userId)) {
+                continue;
+            }
+            into.add(new Entry(timestamp, user,
+                               string(block, block.getInt(record + 12), offsetsStart, bytesStart, decoded),
+                               string(block, block.getInt(record + 16), offsetsStart, bytesStart, decoded),
+                               string(block, block.getInt(record + 20), offsetsStart, bytesStart, decoded)));
+        }
+    }
+    
+    private static String string(ByteBuffer block, int number, int offsetsStart, int bytesStart, String[] decoded) {
+        if (number == NO_STRING) {
+            return null;
+        }
+        if (decoded[number] == null) {
+            int start = block.getInt(offsetsStart + number * 4);
+            int end = block.getInt(offsetsStart + (number + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = block.get(bytesStart + start + i);
+            }
+            decoded[number] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return decoded[number];
+    }
+    
+    // Also runs on the background flush schedule, which an exception would cancel
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // The block stays in memory and is written with the next flush
+        }
+    }
+    
+    private void recordDropped() {
+        if (counters != null) {
+            counters.recordDropped(1);
+        }
+    }
+    
+    // Usage: java -cp src StructuredActivityLog <userId|all> [fromDate] [toDate]
+    // Dates are yyyy-MM-dd, the end date is inclusive; without dates the whole log is searched
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java -cp src StructuredActivityLog <userId|all> [fromDate] [toDate]");
+            return;
+        }
+        Integer userId = args[0].equalsIgnoreCase("all") ? null : Integer.valueOf(args[0]);
+        ZoneId zone = ZoneId.systemDefault();
+        long from = args.length > 1 ? LocalDate.parse(args[1]).atStartOfDay(zone).toInstant().toEpochMilli() : Long.MIN_VALUE;
+        long to = args.length > 2 ? LocalDate.parse(args[2]).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli()
+                                  : args.length > 1 ? LocalDate.parse(args[1]).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli()
+                                  : Long.MAX_VALUE;
+        
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        List<Entry> entries = new StructuredActivityLog("activity_log.bin").query(userId, from, to);
+        for (Entry entry : entries) {
+            String time = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(entry.getTimestamp()), zone).format(formatter);
+            if (entry.getUserId() == SYSTEM_USER_ID) {
+                System.out.println("[" + time + "] SYSTEM: " + entry.getFullAction());
+            } else {
+                System.out.println("[" + time + "] User " + entry.getUserId() + " (" + entry.getUserName() + "): " + entry.getFullAction());
+            }
+        }
+        System.out.println(entries.size() + " entries");
+    }
+}
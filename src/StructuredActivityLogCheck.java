@@ -0,0 +1,56 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+// Checks that the binary activity log survives a failing flush: while its files cannot be written,
+// appends keep returning, a full block drops further entries and counts them, and once the files can be
+// written again the kept block is flushed and readable. Exits with code 1 when a check fails.
+//   java -cp src StructuredActivityLogCheck
+public class StructuredActivityLogCheck {
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("structured_log_check").toFile();
+        File missing = new File(directory, "missing");
+        File dataFile = new File(missing, "activity_log.bin");
+        LogCounters counters = new LogCounters();
+        StructuredActivityLog log = new StructuredActivityLog(dataFile.getPath(), counters);
+        long time = System.currentTimeMillis();
+        int blockSize = StructuredActivityLog.MAX_BLOCK_RECORDS;
+        
+        // The directory of the log files does not exist yet, so every flush fails
+        log.append(time, 1, "Check", "First entry");
+        boolean flushFailed = false;
+        try {
+            log.flush();
+        } catch (IOException e) {
+            flushFailed = true;
+        }
+        check(flushFailed, "flush did not fail without a log directory");
+        
+        for (int i = 0; i < 2 * blockSize; i++) {
+            log.append(time + i, 1 + i % 3, "Check", "Entry - " + i);
+        }
+        long expectedDropped = 2L * blockSize - (blockSize - 1);
+        check(counters.getDropped() == expectedDropped,
+              "dropped " + counters.getDropped() + " entries, expected " + expectedDropped);
+        
+        check(missing.mkdir(), "could not create " + missing);
+        log.append(time + 2 * blockSize, 1, "Check", "After recovery");
+        log.flush();
+        List<StructuredActivityLog.Entry> entries = log.query(null, Long.MIN_VALUE, Long.MAX_VALUE);
+        check(entries.size() == blockSize + 1, "read " + entries.size() + " entries, expected " + (blockSize + 1));
+        check(entries.get(0).getAction().equals("First entry"), "the kept block was not written first");
+        
+        for (File file : new File[] {dataFile, new File(dataFile.getPath() + ".idx"), missing, directory}) {
+            file.delete();
+        }
+        System.out.println("Structured activity log checks passed");
+    }
+    
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("Check failed: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.*;
+
+// Immutable secondary indexes over tasks by hive, assigned user, status and type.
+// Every bucket is a PersistentIntMap keyed by task ID, so an update copies only the buckets it touches
+// and queries walk only the tasks they return.
+public final class TaskIndex {
+    private static final Task.Status[] STATUSES = Task.Status.values();
+    private static final Task.Type[] TYPES = Task.Type.values();
+    
+    public static final TaskIndex EMPTY = new TaskIndex(PersistentIntMap.<Keys>empty(), PersistentIntMap.<PersistentIntMap<Task>>empty(),
+                                                        PersistentIntMap.<PersistentIntMap<Task>>empty(),
+                                                        emptyBuckets(STATUSES.length + 1), emptyBuckets(TYPES.length + 1));
+    
+    // The keys a task was indexed under; tasks are mutated in place before they are updated,
+    // so the old buckets cannot be read from the task itself
+    private static final class Keys {
+        final int hiveId;
+        final int assignedUserId;
+        final int status;
+        final int type;
+        
+        Keys(Task task) {
+            this.hiveId = task.getHiveId();
+            this.assignedUserId = task.getAssignedUserId();
+            this.status = task.getStatus() != null ? task.getStatus().ordinal() : STATUSES.length;
+            this.type = task.getType() != null ? task.getType().ordinal() : TYPES.length;
+        }
+        
+        boolean matches(Integer hiveId, Integer assignedUserId, Task.Status status, Task.Type type) {
+            return (hiveId == null || this.hiveId == hiveId)
+                && (assignedUserId == null || this.assignedUserId == assignedUserId)
+                && (status == null || this.status == status.ordinal())
+                && (type == null || this.type == type.ordinal());
+        }
+    }
+    
+    private final PersistentIntMap<Keys> keys;
+    private final PersistentIntMap<PersistentIntMap<Task>> byHive;
+    private final PersistentIntMap<PersistentIntMap<Task>> byAssignee;
+    private final PersistentIntMap<Task>[] byStatus;
+    private final PersistentIntMap<Task>[] byType;
+    
+    private TaskIndex(PersistentIntMap<Keys> keys, PersistentIntMap<PersistentIntMap<Task>> byHive,
+                      PersistentIntMap<PersistentIntMap<Task>> byAssignee, PersistentIntMap<Task>[] byStatus,
+                      PersistentIntMap<Task>[] byType) {
+        this.keys = keys;
+        this.byHive = byHive;
+        this.byAssignee = byAssignee;
+        this.byStatus = byStatus;
+        this.byType = byType;
+    }
+    
+    public static TaskIndex of(Collection<Task> tasks) {
+        TaskIndex index = EMPTY;
+        for (Task task : tasks) {
+            index = index.with(task);
+        }
+        return index;
+    }
+    
+    // Indexes a new task or moves an updated one to the buckets of its current values
+    public TaskIndex with(Task task) {
+        TaskIndex index = without(task.getId());
+        Keys taskKeys = new Keys(task);
+        PersistentIntMap<Task>[] newByStatus = index.byStatus.clone();
+        newByStatus[taskKeys.status] = newByStatus[taskKeys.status].plus(task.getId(), task);
+        PersistentIntMap<Task>[] newByType = index.byType.clone();
+        newByType[taskKeys.type] = newByType[taskKeys.type].plus(task.getId(), task);
+        return new TaskIndex(index.keys.plus(task.getId(), taskKeys),
+                             addToBucket(index.byHive, taskKeys.hiveId, task),
+                             addToBucket(index.byAssignee, taskKeys.assignedUserId, task),
+                             newByStatus, newByType);
+    }
+    
+    public TaskIndex without(int taskId) {
+        Keys taskKeys = keys.get(taskId);
+        if (taskKeys == null) {
+            return this;
+        }
+        PersistentIntMap<Task>[] newByStatus = byStatus.clone();
+        newByStatus[taskKeys.status] = newByStatus[taskKeys.status].minus(taskId);
+        PersistentIntMap<Task>[] newByType = byType.clone();
+        newByType[taskKeys.type] = newByType[taskKeys.type].minus(taskId);
+        return new TaskIndex(keys.minus(taskId),
+                             removeFromBucket(byHive, taskKeys.hiveId, taskId),
+                             removeFromBucket(byAssignee, taskKeys.assignedUserId, taskId),
+                             newByStatus, newByType);
+    }
+    
+    public Collection<Task> forHive(int hiveId) {
+        return bucket(byHive, hiveId).values();
+    }
+    
+    public Collection<Task> assignedTo(int userId) {
+        return bucket(byAssignee, userId).values();
+    }
+    
+    public Collection<Task> withStatus(Task.Status status) {
+        return byStatus[status.ordinal()].values();
+    }
+    
+    public Collection<Task> ofType(Task.Type type) {
+        return byType[type.ordinal()].values();
+    }
+    
+    public int countWithStatus(Task.Status status) {
+        return byStatus[status.ordinal()].size();
+    }
+    
+    public int countOfType(Task.Type type) {
+        return byType[type.ordinal()].size();
+    }
+    
+    public int countAssignedTo(int userId) {
+        return bucket(byAssignee, userId).size();
+    }
+    
+    // Null criteria match anything. Walks the smallest matching bucket and checks the other criteria
+    // against the indexed keys, so the cost follows the most selective criterion.
+    public List<Task> find(Integer hiveId, Integer assignedUserId, Task.Status status, Task.Type type) {
+        PersistentIntMap<Task> smallest = null;
+        if (hiveId != null) {
+            smallest = smaller(smallest, bucket(byHive, hiveId));
+        }
+        if (assignedUserId != null) {
+            smallest = smaller(smallest, bucket(byAssignee, assignedUserId));
+        }
+        if (status != null) {
+            smallest = smaller(smallest, byStatus[status.ordinal()]);
+        }
+        if (type != null) {
+            smallest = smaller(smallest, byType[type.ordinal()]);
+        }
+        if (smallest == null) {
+            return allTasks();
+        }
+        
+        List<Task> result = new ArrayList<>();
+        for (Map.Entry<Integer, Task> entry : smallest.entrySet()) {
+            if (keys.get(entry.getKey().intValue()).matches(hiveId, assignedUserId, status, type)) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+    
+    private List<Task> allTasks() {
+        List<Task> tasks = new ArrayList<>(keys.size());
+        for (PersistentIntMap<Task> bucket : byStatus) {
+            tasks.addAll(bucket.values());
+        }
+        tasks.sort(Comparator.comparingInt(Task::getId));
+        return tasks;
+    }
+    
+    private static PersistentIntMap<Task> smaller(PersistentIntMap<Task> current, PersistentIntMap<Task> candidate) {
+        return current == null || candidate.size() < current.size() ? candidate : current;
+    }
+    
+    private static PersistentIntMap<Task> bucket(PersistentIntMap<PersistentIntMap<Task>> buckets, int key) {
+        PersistentIntMap<Task> bucket = buckets.get(key);
+        return bucket != null ? bucket : PersistentIntMap.<Task>empty();
+    }
+    
+    private static PersistentIntMap<PersistentIntMap<Task>> addToBucket(PersistentIntMap<PersistentIntMap<Task>> buckets,
+                                                                        int key, Task task) {
+        return buckets.plus(key, bucket(buckets, key).plus(task.getId(), task));
+    }
+    
+    private static PersistentIntMap<PersistentIntMap<Task>> removeFromBucket(PersistentIntMap<PersistentIntMap<Task>> buckets,
+                                                                             int key, int taskId) {
+        PersistentIntMap<Task> bucket = bucket(buckets, key).minus(taskId);
+        return bucket.isEmpty() ? buckets.minus(key) : buckets.plus(key, bucket);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static PersistentIntMap<Task>[] emptyBuckets(int count) {
+        PersistentIntMap<Task>[] buckets = (PersistentIntMap<Task>[]) new PersistentIntMap<?>[count];
+        Arrays.fill(buckets, PersistentIntMap.<Task>empty());
+        return buckets;
+    }
+}
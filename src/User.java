@@ -37,6 +37,7 @@ public class User implements Serializable {
     public Role getRole() { return role; }
     public List<Hive> getManagedHives() { return managedHives; }
     public List<Task> getAssignedTasks() { return assignedTasks; }
+    String getPassword() { return password; } // Only for persistence
     
     public void setName(String name) { this.name = name; }
     public void setEmail(String email) { this.email = email; }
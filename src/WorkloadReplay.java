@@ -0,0 +1,497 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Replays the user actions recorded in activity logs against DataManager with the original timing,
+// so storage and locking changes can be measured on real traffic:
+//   java -cp src WorkloadReplay --speed 10 --concurrency 16 activity_log.1.txt.gz activity_log.txt
+// Speed 1 keeps the recorded pace, 10 runs ten times faster and max runs without waiting. The actions
+// of one user always run in order on the same worker. IDs that do not exist in the local data are mapped
+// onto existing entities, so a production log can run against a generated dataset.
+public class WorkloadReplay {
+    private static final Pattern LINE = Pattern.compile("^\\[(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})\\] User (-?\\d+) \\((.*?)\\): (.*)$");
+    private static final Pattern TASK_ID = Pattern.compile("Task ID: (\\d+)");
+    private static final Pattern HIVE_ID = Pattern.compile("Hive ID: (\\d+)");
+    private static final Pattern ID = Pattern.compile("ID: (\\d+)");
+    private static final Pattern TARGET_USER_ID = Pattern.compile("to User ID: (\\d+)");
+    private static final Pattern NEW_STATUS = Pattern.compile("New Status: (\\w+)");
+    private static final Pattern NEW_TYPE = Pattern.compile("New Type: (\\w+)");
+    private static final Pattern TYPE = Pattern.compile("Type: (\\w+)");
+    private static final Pattern FILTER = Pattern.compile("Filter: (.*), Count: \\d+$");
+    private static final Pattern REPORT = Pattern.compile("Content: (.*), Related Hives: \\[(.*?)\\], Related Tasks: \\[(.*?)\\]$");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
+    // One recorded user action
+    private static class Event {
+        final long time;
+        final int userId;
+        final String operation;
+        final String action;
+        long offsetMillis;
+        
+        Event(long time, int userId, String operation, String action) {
+            this.time = time;
+            this.userId = userId;
+            this.operation = operation;
+            this.action = action;
+        }
+    }
+    
+    private final List<Event> events = new ArrayList<>();
+    private final Map<String, Integer> skippedActions = new TreeMap<>();
+    private long logSpanMillis;
+    
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final LatencyHistogram allLatencies = new LatencyHistogram();
+    private final LatencyHistogram scheduleLag = new LatencyHistogram();
+    private final LongAdder failedOperations = new LongAdder();
+    
+    private DataManager dataManager;
+    private List<User> users;
+    
+    // Reads the log files; rotated .gz segments are read as they are
+    public void load(List<File> files) throws IOException {
+        for (File file : files) {
+            // The file is a resource of its own, so it is closed even when a truncated .gz header fails to read
+            try (InputStream raw = new FileInputStream(file);
+                 InputStream in = file.getName().endsWith(".gz") ? new GZIPInputStream(raw) : raw;
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Matcher matcher = LINE.matcher(line);
+                    if (!matcher.matches()) {
+                        continue; // SYSTEM lines are side effects of the user actions
+                    }
+                    String action = matcher.group(4);
+                    String operation = operationOf(action);
+                    if (operation == null) {
+                        String name = action.split(" - ", 2)[0];
+                        skippedActions.merge(name, 1, Integer::sum);
+                        continue;
+                    }
+                    long time = LocalDateTime.parse(matcher.group(1), TIMESTAMP)
+                                             .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    events.add(new Event(time, Integer.parseInt(matcher.group(2)), operation, action));
+                }
+            }
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        events.sort(Comparator.comparingLong(event -> event.time));
+        
+        // The log has whole seconds, so the actions of one second are spread evenly over it
+        long first = events.get(0).time;
+        int start = 0;
+        while (start < events.size()) {
+            int end = start;
+            while (end < events.size() && events.get(end).time == events.get(start).time) {
+                end++;
+            }
+            for (int i = start; i < end; i++) {
+                events.get(i).offsetMillis = events.get(i).time - first + 1000L * (i - start) / (end - start);
+            }
+            start = end;
+        }
+        logSpanMillis = events.get(events.size() - 1).offsetMillis;
+    }
+    
+    // Maps a logged action to the menu action that produced it, or null when it is not replayed
+    private static String operationOf(String action) {
+        if (action.startsWith("Logged in as")) {
+            return "login";
+        } else if (action.startsWith("Viewed own tasks")) {
+            return "view_own_tasks";
+        } else if (action.startsWith("Viewed all tasks") || action.startsWith("Viewed tasks")) {
+            return "view_all_tasks";
+        } else if (action.startsWith("Viewed all hives") || action.startsWith("Viewed hives")) {
+            return "view_all_hives";
+        } else if (action.startsWith("Viewed all users") || action.startsWith("Viewed users")) {
+            return "view_all_users";
+        } else if (action.startsWith("Viewed user reports")) {
+            return "view_reports";
+        } else if (action.startsWith("Viewed hive statistics") || action.startsWith("Viewed task statistics")) {
+            return "view_statistics";
+        } else if (action.startsWith("Filtered hives - ")) {
+            return "filter_hives";
+        } else if (action.startsWith("Completed task - ")) {
+            return "complete_task";
+        } else if (action.startsWith("Submitted report - ")) {
+            return "submit_report";
+        } else if (action.startsWith("Created new task - ")) {
+            return "create_task";
+        } else if (action.startsWith("Created new hive - ")) {
+            return "create_hive";
+        } else if (action.startsWith("Created new user - ")) {
+            return "create_user";
+        } else if (action.startsWith("Assigned task - ")) {
+            return "assign_task";
+        } else if (action.startsWith("Updated task ")) {
+            return "edit_task";
+        } else if (action.startsWith("Updated hive ")) {
+            return "edit_hive";
+        } else if (action.startsWith("Deleted report - ")) {
+            return "delete_report";
+        }
+        return null;
+    }
+    
+    // Runs all events; speed 0 means as fast as possible
+    public long replay(double speed, int concurrency) throws InterruptedException {
+        dataManager = DataManager.getInstance();
+        users = new ArrayList<>(dataManager.getUsers().values());
+        if (users.isEmpty()) {
+            throw new IllegalStateException("The data has no users to replay the log with");
+        }
+        
+        List<List<Event>> workerEvents = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            workerEvents.add(new ArrayList<>());
+        }
+        for (Event event : events) {
+            workerEvents.get(Math.floorMod(event.userId, concurrency)).add(event);
+        }
+        
+        long start = System.nanoTime();
+        ExecutorService executor = LoadHarness.newSessionExecutor();
+        for (List<Event> worker : workerEvents) {
+            if (!worker.isEmpty()) {
+                executor.execute(() -> runWorker(worker, start, speed));
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        
+        dataManager.flush();
+        ActivityLogger.getInstance().flush();
+        return System.nanoTime() - start;
+    }
+    
+    private void runWorker(List<Event> worker, long start, double speed) {
+        for (Event event : worker) {
+            long scheduled = start;
+            if (speed > 0) {
+                scheduled += (long) (TimeUnit.MILLISECONDS.toNanos(event.offsetMillis) / speed);
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            long begin = System.nanoTime();
+            if (speed > 0) {
+                scheduleLag.record(Math.max(0, begin - scheduled));
+            }
+            try {
+                execute(event);
+            } catch (RuntimeException e) {
+                failedOperations.increment();
+            }
+            long elapsed = System.nanoTime() - begin;
+            latencies.computeIfAbsent(event.operation, key -> new LatencyHistogram()).record(elapsed);
+            allLatencies.record(elapsed);
+        }
+    }
+    
+    // Makes the same DataManager calls as the menu action that logged the event
+    private void execute(Event event) {
+        User user = resolveUser(event.userId);
+        String action = event.action;
+        switch (event.operation) {
+            case "login": {
+                User found = dataManager.getUserByEmail(user.getEmail());
+                if (found == null || !found.authenticate(user.getPassword())) {
+                    throw new IllegalStateException("Login failed for " + user.getEmail());
+                }
+                break;
+            }
+            case "view_own_tasks":
+                dataManager.reloadDataFromFile();
+                dataManager.getTasksAssignedTo(user.getId());
+                break;
+            case "view_all_tasks":
+                dataManager.reloadDataFromFile();
+                dataManager.findTasks(null, null, null, null);
+                break;
+            case "view_all_hives":
+                dataManager.getHives().size();
+                break;
+            case "view_all_users":
+                dataManager.reloadDataFromFile();
+                dataManager.getUsers().size();
+                break;
+            case "view_reports":
+                dataManager.reloadDataFromFile();
+                dataManager.getReports().size();
+                break;
+            case "view_statistics":
+                if (action.startsWith("Viewed hive")) {
+                    FleetStatistics.ofHives(dataManager.getHives());
+                } else {
+                    FleetStatistics.ofTasks(dataManager.getTasks().values());
+                }
+                break;
+            case "filter_hives": {
+                Matcher matcher = FILTER.matcher(action);
+                if (matcher.find()) {
+                    dataManager.reloadDataFromFile();
+                    dataManager.findHives(HiveFilter.parse(matcher.group(1)));
+                }
+                break;
+            }
+            case "complete_task": {
+                dataManager.reloadDataFromFile();
+                Task task = resolveTask(number(TASK_ID, action));
+                if (task != null) {
+                    user.completeTask(task);
+                    requireStored(dataManager.updateTask(task) && dataManager.updateUser(user));
+                }
+                dataManager.flush();
+                break;
+            }
+            case "submit_report": {
+                dataManager.reloadDataFromFile();
+                Matcher matcher = REPORT.matcher(action);
+                String content = matcher.find() ? matcher.group(1) : action;
+                IntList hiveIds = new IntList();
+                IntList taskIds = new IntList();
+                if (matcher.find(0)) {
+                    for (int id : numbers(matcher.group(2))) {
+                        Hive hive = resolveHive(id);
+                        if (hive != null) {
+                            hiveIds.add(hive.getId());
+                        }
+                    }
+                    for (int id : numbers(matcher.group(3))) {
+                        Task task = resolveTask(id);
+                        if (task != null) {
+                            taskIds.add(task.getId());
+                        }
+                    }
+                }
+                int reportId = dataManager.getNextReportId();
+                requireStored(dataManager.addReport(new Report(reportId, user.getId(), user.getName(), content, hiveIds, taskIds)));
+                break;
+            }
+            case "create_task": {
+                Hive hive = resolveHive(number(HIVE_ID, action));
+                Task.Type type = enumValue(Task.Type.class, TYPE, action, Task.Type.INSPECT_HIVE);
+                int newId = dataManager.allocateTaskIds(1);
+                requireStored(dataManager.addTask(new Task(newId, "Replayed task", type, hive != null ? hive.getId() : 1,
+                                                           LocalDate.now(), LocalDate.now().plusDays(7))));
+                dataManager.flush();
+                break;
+            }
+            case "create_hive": {
+                // Hive IDs are typed in by the admin, so the recorded one is taken when it is still free
+                int id = number(ID, action);
+                while (dataManager.getHive(id) != null) {
+                    id = dataManager.getHives().size() + 1 + ThreadLocalRandom.current().nextInt(1000000);
+                }
+                requireStored(dataManager.addHive(new Hive(id, true, false, false, 0)));
+                break;
+            }
+            case "create_user": {
+                dataManager.reloadDataFromFile();
+                int newId = dataManager.getNextUserId();
+                requireStored(dataManager.addUser(new User(newId, "Replayed user " + newId, "replay" + newId + "@example.com",
+                                                           "replay", User.Role.EMPLOYEE)));
+                break;
+            }
+            case "assign_task": {
+                dataManager.reloadDataFromFile();
+                Task task = resolveTask(number(TASK_ID, action));
+                User assignee = resolveUser(number(TARGET_USER_ID, action));
+                if (task != null) {
+                    assignee.assignTask(task);
+                    requireStored(dataManager.updateTask(task) && dataManager.updateUser(assignee));
+                }
+                break;
+            }
+            case "edit_task": {
+                dataManager.reloadDataFromFile();
+                Task task = resolveTask(number(TASK_ID, action));
+                if (task != null) {
+                    if (action.startsWith("Updated task status")) {
+                        task.setStatus(enumValue(Task.Status.class, NEW_STATUS, action, task.getStatus()));
+                    } else if (action.startsWith("Updated task type")) {
+                        task.setType(enumValue(Task.Type.class, NEW_TYPE, action, task.getType()));
+                    } else if (action.startsWith("Updated task due date")) {
+                        task.setDueDate(task.getDueDate().plusDays(1));
+                    }
+                    requireStored(dataManager.updateTask(task));
+                }
+                break;
+            }
+            case "edit_hive": {
+                // The log does not record the new values, so each edit changes the field it names
+                dataManager.reloadDataFromFile();
+                Hive hive = resolveHive(number(HIVE_ID, action));
+                if (hive != null) {
+                    if (action.startsWith("Updated hive health")) {
+                        hive.setHealthy(!hive.isHealthy());
+                    } else if (action.startsWith("Updated hive attention")) {
+                        hive.setNeedsAttention(!hive.isNeedsAttention());
+                    } else if (action.startsWith("Updated hive queen")) {
+                        hive.setQueenless(!hive.isQueenless());
+                    } else {
+                        hive.setHoneyLevel(ThreadLocalRandom.current().nextInt(101));
+                    }
+                    requireStored(dataManager.updateHive(hive));
+                }
+                break;
+            }
+            case "delete_report": {
+                dataManager.reloadDataFromFile();
+                int id = number(ID, action);
+                if (dataManager.getReport(id) != null) {
+                    requireStored(dataManager.removeReport(id));
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown operation " + event.operation);
+        }
+    }
+    
+    // A write the data manager could not store counts as a failed operation
+    private static void requireStored(boolean stored) {
+        if (!stored) {
+            throw new IllegalStateException("The change could not be stored");
+        }
+    }
+    
+    private User resolveUser(int id) {
+        User user = dataManager.getUser(id);
+        return user != null ? user : users.get(Math.floorMod(id, users.size()));
+    }
+    
+    private Task resolveTask(int id) {
+        Task task = dataManager.getTask(id);
+        int count = dataManager.getTasks().size();
+        return task != null || count == 0 ? task : dataManager.getTask(1 + Math.floorMod(id - 1, count));
+    }
+    
+    private Hive resolveHive(int id) {
+        Hive hive = dataManager.getHive(id);
+        int count = dataManager.getHives().size();
+        return hive != null || count == 0 ? hive : dataManager.getHive(1 + Math.floorMod(id - 1, count));
+    }
+    
+    private static int number(Pattern pattern, String action) {
+        Matcher matcher = pattern.matcher(action);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+    }
+    
+    private static List<Integer> numbers(String list) {
+        List<Integer> numbers = new ArrayList<>();
+        for (String part : list.split(",")) {
+            part = part.trim();
+            if (!part.isEmpty()) {
+                numbers.add(Integer.parseInt(part));
+            }
+        }
+        return numbers;
+    }
+    
+    private static <E extends Enum<E>> E enumValue(Class<E> type, Pattern pattern, String action, E fallback) {
+        Matcher matcher = pattern.matcher(action);
+        if (matcher.find()) {
+            try {
+                return Enum.valueOf(type, matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                // Logged by an older version with different constants
+            }
+        }
+        return fallback;
+    }
+    
+    private void printReport(long elapsedNanos, double speed, int concurrency) {
+        double seconds = elapsedNanos / 1e9;
+        long operations = allLatencies.getCount();
+        System.out.printf("%nReplayed %d actions spanning %.1f s in %.1f s at %s speed with %d workers, %.0f ops/s%n",
+                          operations, logSpanMillis / 1e3, seconds, speed > 0 ? speed + "x" : "max", concurrency,
+                          operations / seconds);
+        Map<String, LatencyHistogram> sorted = new TreeMap<>(latencies);
+        sorted.put("all", allLatencies);
+        LoadHarness.printLatencies(sorted);
+        if (speed > 0) {
+            System.out.printf("Start delay behind schedule: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                              scheduleLag.getPercentile(0.5) / 1e6, scheduleLag.getPercentile(0.99) / 1e6,
+                              scheduleLag.getMax() / 1e6);
+        }
+        System.out.println("Failed operations: " + failedOperations.sum());
+        if (!skippedActions.isEmpty()) {
+            System.out.println("Not replayed: " + skippedActions);
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        double speed = 1;
+        int concurrency = 16;
+        List<File> files = new ArrayList<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.startsWith("--") && i + 1 >= args.length) {
+                usage();
+                return;
+            }
+            switch (option) {
+                case "--speed": {
+                    String value = args[++i].toLowerCase();
+                    if (value.endsWith("x") && !value.equals("max")) {
+                        value = value.substring(0, value.length() - 1);
+                    }
+                    speed = value.equals("max") ? 0 : Double.parseDouble(value);
+                    break;
+                }
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (option.startsWith("--")) {
+                        usage();
+                        return;
+                    }
+                    files.add(new File(option));
+            }
+        }
+        if (files.isEmpty()) {
+            files.add(new File("activity_log.txt"));
+        }
+        if (concurrency < 1 || speed < 0) {
+            usage();
+            return;
+        }
+        
+        WorkloadReplay replay = new WorkloadReplay();
+        replay.load(files);
+        if (replay.events.isEmpty()) {
+            System.out.println("No replayable actions found in " + files);
+            return;
+        }
+        long elapsed = replay.replay(speed, concurrency);
+        replay.printReport(elapsed, speed, concurrency);
+        System.exit(0);
+    }
+    
+    private static void usage() {
+        System.out.println("Usage: java -cp src WorkloadReplay [--speed 1|10|max] [--concurrency N] [log files...]");
+    }
+}
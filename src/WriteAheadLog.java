@@ -0,0 +1,203 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class WriteAheadLog {
+    public static final byte ENTITY_HIVE = 1;
+    public static final byte ENTITY_TASK = 2;
+    public static final byte ENTITY_USER = 3;
+    public static final byte ENTITY_REPORT = 4;
+    
+    public static final byte OP_PUT = 1;
+    public static final byte OP_REMOVE = 2;
+    
+    private static final int MAGIC = 0x4257414C; // "BWAL"
+    private static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    // length + entity + op before the payload, crc after it
+    private static final int RECORD_OVERHEAD = 4 + 1 + 1 + 4;
+    
+    public static class Record {
+        public final byte entity;
+        public final byte op;
+        public final byte[] payload;
+        
+        public Record(byte entity, byte op, byte[] payload) {
+            this.entity = entity;
+            this.op = op;
+            this.payload = payload;
+        }
+    }
+    
+    // Result of reading the log tail: the records plus the offset right after the last intact record
+    public static class Tail {
+        public final List<Record> records;
+        public final long endOffset;
+        
+        Tail(List<Record> records, long endOffset) {
+            this.records = records;
+            this.endOffset = endOffset;
+        }
+    }
+    
+    private final FileChannel channel;
+    private volatile boolean unsynced;
+    private ScheduledExecutorService syncExecutor;
+    
+    public WriteAheadLog(String path) throws IOException {
+        File file = new File(path);
+        this.channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    
+    public long size() throws IOException {
+        return channel.size();
+    }
+    
+    // Returns the checkpoint generation stored in the header, or -1 if the log has no valid header yet
+    public long readGeneration() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return -1;
+        }
+        return header.getLong();
+    }
+    
+    // Drops every record and starts a fresh log for the given snapshot generation
+    public void reset(long generation) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation);
+        header.flip();
+        writeFully(header, 0);
+        channel.force(false);
+    }
+    
+    public void truncate(long offset) throws IOException {
+        channel.truncate(offset);
+    }
+    
+    // Appends the records at the end of the log and returns the new end offset
+    public long append(List<Record> records) throws IOException {
+        int total = 0;
+        for (Record record : records) {
+            total += RECORD_OVERHEAD + record.payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (Record record : records) {
+            crc.reset();
+            crc.update(record.entity);
+            crc.update(record.op);
+            crc.update(record.payload, 0, record.payload.length);
+            buffer.putInt(record.payload.length);
+            buffer.put(record.entity);
+            buffer.put(record.op);
+            buffer.put(record.payload);
+            buffer.putInt((int) crc.getValue());
+        }
+        buffer.flip();
+        long position = channel.size();
+        writeFully(buffer, position);
+        unsynced = true;
+        return position + total;
+    }
+    
+    public void force() throws IOException {
+        unsynced = false;
+        channel.force(false);
+    }
+    
+    // Forces appended records to disk on a timer instead of on every append
+    public void startPeriodicSync(long intervalMillis) {
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(() -> {
+            if (unsynced) {
+                try {
+                    force();
+                } catch (IOException e) {
+                    unsynced = true;
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    // Reads every intact record from the offset onwards. A torn or corrupt record ends the tail.
+    public Tail readFrom(long offset) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long size = channel.size();
+        long position = Math.max(offset, HEADER_SIZE);
+        if (position >= size) {
+            return new Tail(records, position);
+        }
+        
+        ByteBuffer data = ByteBuffer.allocate((int) (size - position));
+        readFully(data, position);
+        data.flip();
+        
+        CRC32 crc = new CRC32();
+        while (data.remaining() >= RECORD_OVERHEAD) {
+            int start = data.position();
+            int length = data.getInt();
+            if (length < 0 || length > data.remaining() - 6) {
+                data.position(start);
+                break;
+            }
+            byte entity = data.get();
+            byte op = data.get();
+            byte[] payload = new byte[length];
+            data.get(payload);
+            int storedCrc = data.getInt();
+            
+            crc.reset();
+            crc.update(entity);
+            crc.update(op);
+            crc.update(payload, 0, payload.length);
+            if ((int) crc.getValue() != storedCrc) {
+                data.position(start);
+                break;
+            }
+            records.add(new Record(entity, op, payload));
+        }
+        return new Tail(records, position + data.position());
+    }
+    
+    public void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+        }
+        channel.close();
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of write-ahead log");
+            }
+            position += read;
+        }
+    }
+    
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
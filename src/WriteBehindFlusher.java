@@ -0,0 +1,37 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Runs the flush action on a background thread every interval, or as soon as a batch fills up
+public class WriteBehindFlusher {
+    private final ScheduledExecutorService executor;
+    private final Runnable flushAction;
+    private final int batchSize;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    
+    public WriteBehindFlusher(Runnable flushAction, long intervalMillis, int batchSize) {
+        this.flushAction = flushAction;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "data-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runFlush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        
+        // Pending writes must not be lost when the application exits between flushes
+        Runtime.getRuntime().addShutdownHook(new Thread(flushAction, "data-flusher-shutdown"));
+    }
+    
+    public void onMutation(int pendingCount) {
+        if (pendingCount >= batchSize && flushRequested.compareAndSet(false, true)) {
+            executor.execute(this::runFlush);
+        }
+    }
+    
+    private void runFlush() {
+        flushRequested.set(false);
+        flushAction.run();
+    }
+}